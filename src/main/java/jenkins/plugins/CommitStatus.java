@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import java.io.Serializable;
+
+/**
+ * A status to set on the head commit of a merge request, saying whether the
+ * new issues are within the quality gate.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class CommitStatus implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String SUCCESS = "success";
+    public static final String FAILED = "failed";
+
+    //what Gitlab shows the status as, and what a later status replaces it by
+    public static final String NAME = "sonar";
+
+    private final String state;
+    private final String description;
+    private final String targetUrl;
+
+    public CommitStatus(String state, String description, String targetUrl) {
+        this.state = state;
+        this.description = description;
+        this.targetUrl = targetUrl;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * The page with the full results, or null if there is none.
+     */
+    public String getTargetUrl() {
+        return targetUrl;
+    }
+
+    @Override
+    public String toString() {
+        return "CommitStatus{" + "state=" + state + ", description=" + description + '}';
+    }
+
+}
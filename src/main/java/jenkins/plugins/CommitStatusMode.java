@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+/**
+ * Whether a commit status is set on the head of the merge request, and
+ * whether the note is still posted with it.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public enum CommitStatusMode {
+
+    NONE("Do not set a commit status"),
+    WITH_NOTE("Set a commit status and post the note"),
+    INSTEAD_OF_NOTE("Only set a commit status");
+
+    private final String displayName;
+
+    private CommitStatusMode(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * @return the mode with the given name, or {@link #NONE} if there is none
+     */
+    public static CommitStatusMode of(String name) {
+        if (name != null) {
+            for (CommitStatusMode mode : values()) {
+                if (mode.name().equals(name)) {
+                    return mode;
+                }
+            }
+        }
+        return NONE;
+    }
+
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import com.google.inject.Inject;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.util.HashMap;
+import java.util.Map;
+import jenkins.plugins.sonarparser.models.SonarReport;
+import jenkins.plugins.sonarparser.models.SonarSeverity;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Posts the sonar results of a pipeline to a merge request. The results are
+ * parsed on the node of the workspace, off the pipeline thread, so parallel
+ * branches can each report their own results. The step returns the issue
+ * counts, so the script can decide what to do next:
+ * <pre>
+ * def issues = gitlabSonarReport projectPath: 'group/project', mergeRequestId: 12, sonarResults: '**&#47;sonar-report.json'
+ * if (issues.BLOCKER &gt; 0) { error 'New blocker issues' }
+ * </pre>
+ * The notes use the default messages of the global configuration. The
+ * source branch commit that was built, needed for diff comments, the changed
+ * lines and the commit status, is the one given, else the one the merge
+ * request trigger started the build for. Only when neither is known is
+ * Gitlab asked for the head of the merge request.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class GitlabSonarReportStep extends AbstractStepImpl {
+
+    private final String projectPath;
+    private final int mergeRequestId;
+    private final String sonarResults;
+    private String commit;
+    private boolean inlineComments;
+    private boolean incrementalReport;
+    private boolean onlyChangedLines;
+    private String issueGrouping;
+    private Integer maxIssuesPerGroup;
+    private String minimumSeverity;
+    private String includedRules;
+    private String excludedRules;
+    private String includedPaths;
+    private String excludedPaths;
+    private String commitStatusMode;
+    private String qualityGateThresholds;
+
+    @DataBoundConstructor
+    public GitlabSonarReportStep(String projectPath, int mergeRequestId, String sonarResults) {
+        this.projectPath = projectPath;
+        this.mergeRequestId = mergeRequestId;
+        this.sonarResults = sonarResults;
+    }
+
+    public String getProjectPath() {
+        return projectPath;
+    }
+
+    public int getMergeRequestId() {
+        return mergeRequestId;
+    }
+
+    public String getSonarResults() {
+        return sonarResults;
+    }
+
+    /**
+     * The source branch commit the pipeline checked out, or null to use the
+     * one the merge request trigger started the build for.
+     * <code>GIT_COMMIT</code> is not set in a pipeline, and is a local merge
+     * commit when the branch is merged before building.
+     */
+    public String getCommit() {
+        return commit;
+    }
+
+    @DataBoundSetter
+    public void setCommit(String commit) {
+        this.commit = commit;
+    }
+
+    public boolean isInlineComments() {
+        return inlineComments;
+    }
+
+    @DataBoundSetter
+    public void setInlineComments(boolean inlineComments) {
+        this.inlineComments = inlineComments;
+    }
+
+    public boolean isIncrementalReport() {
+        return incrementalReport;
+    }
+
+    @DataBoundSetter
+    public void setIncrementalReport(boolean incrementalReport) {
+        this.incrementalReport = incrementalReport;
+    }
+
+    public boolean isOnlyChangedLines() {
+        return onlyChangedLines;
+    }
+
+    @DataBoundSetter
+    public void setOnlyChangedLines(boolean onlyChangedLines) {
+        this.onlyChangedLines = onlyChangedLines;
+    }
+
+    public String getIssueGrouping() {
+        return issueGrouping;
+    }
+
+    @DataBoundSetter
+    public void setIssueGrouping(String issueGrouping) {
+        this.issueGrouping = issueGrouping;
+    }
+
+    public Integer getMaxIssuesPerGroup() {
+        return maxIssuesPerGroup;
+    }
+
+    @DataBoundSetter
+    public void setMaxIssuesPerGroup(Integer maxIssuesPerGroup) {
+        this.maxIssuesPerGroup = maxIssuesPerGroup;
+    }
+
+    public String getMinimumSeverity() {
+        return minimumSeverity;
+    }
+
+    @DataBoundSetter
+    public void setMinimumSeverity(String minimumSeverity) {
+        this.minimumSeverity = minimumSeverity;
+    }
+
+    public String getIncludedRules() {
+        return includedRules;
+    }
+
+    @DataBoundSetter
+    public void setIncludedRules(String includedRules) {
+        this.includedRules = includedRules;
+    }
+
+    public String getExcludedRules() {
+        return excludedRules;
+    }
+
+    @DataBoundSetter
+    public void setExcludedRules(String excludedRules) {
+        this.excludedRules = excludedRules;
+    }
+
+    public String getIncludedPaths() {
+        return includedPaths;
+    }
+
+    @DataBoundSetter
+    public void setIncludedPaths(String includedPaths) {
+        this.includedPaths = includedPaths;
+    }
+
+    public String getExcludedPaths() {
+        return excludedPaths;
+    }
+
+    @DataBoundSetter
+    public void setExcludedPaths(String excludedPaths) {
+        this.excludedPaths = excludedPaths;
+    }
+
+    public String getCommitStatusMode() {
+        return commitStatusMode;
+    }
+
+    @DataBoundSetter
+    public void setCommitStatusMode(String commitStatusMode) {
+        this.commitStatusMode = commitStatusMode;
+    }
+
+    public String getQualityGateThresholds() {
+        return qualityGateThresholds;
+    }
+
+    @DataBoundSetter
+    public void setQualityGateThresholds(String qualityGateThresholds) {
+        this.qualityGateThresholds = qualityGateThresholds;
+    }
+
+    /**
+     * The reporter a job with the same settings would have, using the
+     * default messages.
+     */
+    GitlabSonarReporter toReporter() {
+        return new GitlabSonarReporter(projectPath, sonarResults, true, true, true, null, null, null,
+                inlineComments, incrementalReport, issueGrouping, maxIssuesPerGroup,
+                minimumSeverity, includedRules, excludedRules, includedPaths, excludedPaths,
+                onlyChangedLines, commitStatusMode, qualityGateThresholds);
+    }
+
+    /**
+     * The counts returned to the script: <code>newIssues</code>,
+     * <code>totalIssues</code> and the number of new issues of each severity,
+     * all counting every new issue the filters kept. <code>reportedIssues</code>
+     * counts the new issues posted, which are fewer when only the changed
+     * lines or the changes since the last build are reported, and
+     * <code>fixedIssues</code> the issues gone since the last build when the
+     * report is incremental. Neither is known when the report is posted in
+     * the background.
+     */
+    static Map<String, Integer> counts(GitlabSonarReporter.Outcome outcome) {
+        SonarReport found = outcome.getFound();
+        SonarReport posted = outcome.getPosted();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        counts.put("newIssues", found.getNewIssueCount());
+        counts.put("totalIssues", found.getTotalIssueCount());
+        for (SonarSeverity severity : SonarSeverity.values()) {
+            counts.put(severity.name(), found.getNewIssueCount(severity.name()));
+        }
+        if (posted == null) {
+            //posted in the background, so not known yet
+            return counts;
+        }
+        counts.put("reportedIssues", posted.getNewIssueCount());
+        if (posted.getFixedIssueCount() != null) {
+            counts.put("fixedIssues", posted.getFixedIssueCount());
+        }
+        return counts;
+    }
+
+    public static class Execution extends AbstractSynchronousNonBlockingStepExecution<Map<String, Integer>> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Inject
+        private transient GitlabSonarReportStep step;
+
+        @StepContextParameter
+        private transient Run<?, ?> run;
+
+        @StepContextParameter
+        private transient FilePath workspace;
+
+        @StepContextParameter
+        private transient TaskListener listener;
+
+        @Override
+        protected Map<String, Integer> run() throws Exception {
+            String commit = Util.fixEmptyAndTrim(step.getCommit());
+            if (commit == null) {
+                commit = GitlabSonarReporter.getBuiltCommit(run.getEnvironment(listener));
+            }
+            return counts(step.toReporter().report(run, workspace, step.getMergeRequestId(), commit));
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "gitlabSonarReport";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Post Sonar results to a Gitlab merge request";
+        }
+    }
+
+}
@@ -21,39 +21,52 @@
  */
 package jenkins.plugins;
 
+import hudson.EnvVars;
 import hudson.Launcher;
 import hudson.Extension;
 import hudson.FilePath;
+import hudson.Util;
 import hudson.util.FormValidation;
-import hudson.model.AbstractBuild;
-import hudson.model.BuildListener;
+import hudson.util.ListBoxModel;
 import hudson.model.AbstractProject;
 import hudson.model.Result;
-import hudson.tasks.Builder;
+import hudson.model.Run;
+import hudson.model.TaskListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Notifier;
 import hudson.tasks.Publisher;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jenkins.tasks.SimpleBuildStep;
+import jenkins.plugins.gitlab.ChangedLines;
 import jenkins.plugins.gitlab.Gitlab;
-import jenkins.plugins.sonarparser.SonarReportParser;
+import jenkins.plugins.gitlab.MergeRequestNotes;
+import jenkins.plugins.sonarparser.IssueFilter;
+import jenkins.plugins.sonarparser.models.SonarComponent;
 import jenkins.plugins.sonarparser.models.SonarIssue;
 import jenkins.plugins.sonarparser.models.SonarReport;
+import jenkins.plugins.sonarparser.models.SonarSeverity;
 import net.sf.json.JSONObject;
-import org.gitlab.api.models.GitlabMergeRequest;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.QueryParameter;
 
-public class GitlabSonarReporter extends Notifier {
+public class GitlabSonarReporter extends Notifier implements SimpleBuildStep {
 
     private static final Logger LOGGER = Logger.getLogger(GitlabSonarReporter.class.getName());
 
+    //a rough allowance for the component, message and other values of an issue
+    private static final int ESTIMATED_ISSUE_VALUES_LENGTH = 160;
+
+    public static final int DEFAULT_MAX_ISSUES_PER_GROUP = 10;
+    //set by the merge request trigger to the source branch commit the build was started for
+    static final String LAST_COMMIT_VARIABLE = "gitlabMergeRequestLastCommit";
+
     private final String projectPath;
     private final String sonarResults;
     private final Boolean useDefaultMessageHeader;
@@ -62,10 +75,30 @@ public class GitlabSonarReporter extends Notifier {
     private final String messageHeader;
     private final String messageIssue;
     private final String messageFooter;
+    private final Boolean inlineComments;
+    private final Boolean incrementalReport;
+    private final String issueGrouping;
+    private final Integer maxIssuesPerGroup;
+    private final String minimumSeverity;
+    private final String includedRules;
+    private final String excludedRules;
+    private final String includedPaths;
+    private final String excludedPaths;
+    private final Boolean onlyChangedLines;
+    private final String commitStatusMode;
+    private final String qualityGateThresholds;
+
+    //compiled from the templates above the first time they are rendered
+    private transient volatile MessageTemplate headerTemplate;
+    private transient volatile MessageTemplate issueTemplate;
+    private transient volatile MessageTemplate footerTemplate;
+
+    //compiled from the filter settings the first time a report is parsed
+    private transient volatile IssueFilter issueFilter;
 
     // Fields in config.jelly must match the parameter names in the "DataBoundConstructor"
     @DataBoundConstructor
-    public GitlabSonarReporter(String projectPath, String sonarResults, Boolean useDefaultMessageHeader, Boolean useDefaultMessageIssue, Boolean useDefaultMessageFooter, String messageHeader, String messageIssue, String messageFooter) {
+    public GitlabSonarReporter(String projectPath, String sonarResults, Boolean useDefaultMessageHeader, Boolean useDefaultMessageIssue, Boolean useDefaultMessageFooter, String messageHeader, String messageIssue, String messageFooter, Boolean inlineComments, Boolean incrementalReport, String issueGrouping, Integer maxIssuesPerGroup, String minimumSeverity, String includedRules, String excludedRules, String includedPaths, String excludedPaths, Boolean onlyChangedLines, String commitStatusMode, String qualityGateThresholds) {
         this.projectPath = projectPath;
         this.sonarResults = sonarResults;
         this.useDefaultMessageHeader = useDefaultMessageHeader;
@@ -74,6 +107,18 @@ public class GitlabSonarReporter extends Notifier {
         this.messageHeader = messageHeader;
         this.messageIssue = messageIssue;
         this.messageFooter = messageFooter;
+        this.inlineComments = inlineComments;
+        this.incrementalReport = incrementalReport;
+        this.issueGrouping = issueGrouping;
+        this.maxIssuesPerGroup = maxIssuesPerGroup;
+        this.minimumSeverity = minimumSeverity;
+        this.includedRules = includedRules;
+        this.excludedRules = excludedRules;
+        this.includedPaths = includedPaths;
+        this.excludedPaths = excludedPaths;
+        this.onlyChangedLines = onlyChangedLines;
+        this.commitStatusMode = commitStatusMode;
+        this.qualityGateThresholds = qualityGateThresholds;
     }
 
     public String getProjectPath() {
@@ -84,26 +129,77 @@ public class GitlabSonarReporter extends Notifier {
         return sonarResults;
     }
 
+    public boolean isInlineComments() {
+        return inlineComments != null && inlineComments;
+    }
+
+    public boolean isIncrementalReport() {
+        return incrementalReport != null && incrementalReport;
+    }
+
+    public String getIssueGrouping() {
+        return IssueGrouping.of(issueGrouping).name();
+    }
+
+    public int getMaxIssuesPerGroup() {
+        if(maxIssuesPerGroup == null || maxIssuesPerGroup <= 0){
+            return DEFAULT_MAX_ISSUES_PER_GROUP;
+        }
+        return maxIssuesPerGroup;
+    }
+
+    public boolean isOnlyChangedLines() {
+        return onlyChangedLines != null && onlyChangedLines;
+    }
+
+    public String getCommitStatusMode() {
+        return CommitStatusMode.of(commitStatusMode).name();
+    }
+
+    public String getQualityGateThresholds() {
+        return qualityGateThresholds;
+    }
+
+    public String getMinimumSeverity() {
+        return minimumSeverity;
+    }
+
+    public String getIncludedRules() {
+        return includedRules;
+    }
+
+    public String getExcludedRules() {
+        return excludedRules;
+    }
+
+    public String getIncludedPaths() {
+        return includedPaths;
+    }
+
+    public String getExcludedPaths() {
+        return excludedPaths;
+    }
+
+    private IssueFilter getIssueFilter() {
+        IssueFilter filter = issueFilter;
+        if(filter == null){
+            filter = IssueFilter.create(minimumSeverity, includedRules, excludedRules, includedPaths, excludedPaths);
+            issueFilter = filter;
+        }
+        return filter;
+    }
+
     @Override
-    public boolean perform(AbstractBuild build, Launcher launcher, BuildListener listener) {
-        LOGGER.log(Level.INFO, "Starting Gitlab Sonar Reporter, current Build Result: {0}", build.getResult());
-        Result result = build.getResult();
-        if(result != null && result.isBetterOrEqualTo(Result.SUCCESS)){
+    public void perform(Run<?, ?> run, FilePath workspace, Launcher launcher, TaskListener listener) {
+        LOGGER.log(Level.INFO, "Starting Gitlab Sonar Reporter, current Build Result: {0}", run.getResult());
+        Result result = run.getResult();
+        //a pipeline that is still running has no result yet
+        if(result == null || result.isBetterOrEqualTo(Result.SUCCESS)){
             try {
-                LOGGER.log(Level.INFO, "Looking for Merge Request on Gitlab");
-                Map variables = build.getBuildVariables();
-                String mrId = (String)variables.get("gitlabMergeRequestId");
-                //get the merge request
-                GitlabMergeRequest mergeRequest = Gitlab.getMergeRequest(this.projectPath, Integer.parseInt(mrId));
-                LOGGER.log(Level.INFO, "Found Merge Request on Gitlab");
-                //get the report results
-                FilePath workspace = build.getWorkspace();
-                if(workspace != null){
-                    LOGGER.log(Level.INFO, "Getting the Sonar Report.");
-                    SonarReport report = getReport(workspace.absolutize());
-                    //post the comments
-                    postComments(mergeRequest, report);
-                }
+                EnvVars environment = run.getEnvironment(listener);
+                String mrId = environment.get("gitlabMergeRequestId");
+                //GIT_COMMIT is a local merge commit when the branch is merged before the build, so the trigger's commit is used instead
+                report(run, workspace, Integer.parseInt(mrId), getBuiltCommit(environment));
             } catch (IOException ex) {
                 LOGGER.log(Level.SEVERE, null, ex);
             } catch (InterruptedException ex) {
@@ -113,80 +209,324 @@ public class GitlabSonarReporter extends Notifier {
                 LOGGER.log(Level.SEVERE, null, ex);
             } 
         }
-        return true;
+    }
+
+    /**
+     * Parses the sonar results in the workspace and posts what is left after
+     * the filters to the merge request.
+     *
+     * @param sourceSha the source branch commit that was built, or null to
+     * ask Gitlab for the head of the merge request
+     * @return the issues found and those posted
+     */
+    Outcome report(Run<?, ?> run, FilePath workspace, int mergeRequestId, String sourceSha) throws IOException, InterruptedException {
+        //get the report results
+        LOGGER.log(Level.INFO, "Getting the Sonar Report.");
+        SonarReport found = getReport(workspace.absolutize());
+        PendingReport pending = new PendingReport(projectPath, mergeRequestId, sourceSha, run.getParent().getFullName(), sonarResults, run.getNumber(),
+                this, found, run.getAbsoluteUrl());
+        if(!getDescriptor().isAsyncPublishing()){
+            //otherwise the publisher renders it, so the build does not wait on Gitlab for the changes
+            pending = pending.render();
+        }
+        //post the comments
+        ReportPublisher.publish(pending);
+        return new Outcome(found, pending.getPosted());
+    }
+
+    /**
+     * Restricts the issues found to the changed lines, evaluates the quality
+     * gate, leaves out what the last report already posted and renders the
+     * rest. This asks Gitlab for the changes of the merge request, and for
+     * its head commit when the built commit is not known.
+     */
+    PendingReport render(PendingReport unrendered){
+        int mergeRequestId = unrendered.getMergeRequestId();
+        String sourceSha = unrendered.getSourceSha();
+        if(sourceSha == null && needsSourceSha()){
+            sourceSha = getSourceHeadSha(mergeRequestId);
+        }
+        SonarReport report = unrendered.getFound();
+        if(isOnlyChangedLines()){
+            report = restrictToChangedLines(report, mergeRequestId, sourceSha);
+        }
+        //the gate judges every issue on the merge request, not only those added since the last build
+        CommitStatus commitStatus = null;
+        if(CommitStatusMode.of(commitStatusMode) != CommitStatusMode.NONE){
+            if(sourceSha == null){
+                LOGGER.log(Level.WARNING, "The built commit is not known, so no commit status can be set");
+            } else {
+                commitStatus = evaluateQualityGate(report, unrendered.getBuildUrl());
+            }
+        }
+        long[] baseline = null;
+        if(isIncrementalReport()){
+            //only what changed since the last report posted for this job, saved again once this one is posted
+            baseline = IssueBaselines.fingerprintsOf(report);
+            report = IssueBaselines.delta(unrendered, report);
+        }
+        return renderIssues(report, mergeRequestId, sourceSha, unrendered.getJobName(), unrendered.getBuildNumber(), commitStatus, baseline);
+    }
+
+    /**
+     * What a build reported: the new issues the filter kept, and the part of
+     * them that was posted once restricted to the changed lines and compared
+     * to the last report. That part is not known yet when the report is
+     * rendered by the publisher.
+     */
+    static final class Outcome {
+
+        private final SonarReport found;
+        private final SonarReport posted;
+
+        Outcome(SonarReport found, SonarReport posted) {
+            this.found = found;
+            this.posted = posted;
+        }
+
+        SonarReport getFound() {
+            return found;
+        }
+
+        /**
+         * @return the issues posted, or null if the report is posted in the
+         * background
+         */
+        SonarReport getPosted() {
+            return posted;
+        }
     }
     
-    private SonarReport getReport(FilePath workspace) throws IOException{
-        FilePath resultsPath = new FilePath(workspace, this.sonarResults);
-        InputStream resultsStream = null;
+    private boolean needsSourceSha(){
+        return isInlineComments() || isOnlyChangedLines() || CommitStatusMode.of(commitStatusMode) != CommitStatusMode.NONE;
+    }
+
+    /**
+     * @return the source branch commit the merge request trigger started the
+     * build for, or null if the build was not started by it
+     */
+    static String getBuiltCommit(EnvVars environment){
+        return Util.fixEmptyAndTrim(environment.get(LAST_COMMIT_VARIABLE));
+    }
+
+    private String getSourceHeadSha(int mergeRequestId){
+        LOGGER.log(Level.INFO, "The built commit is not known, asking Gitlab for the head of the merge request");
         try {
-            resultsStream = resultsPath.read();
-            SonarReport report = SonarReportParser.parse(resultsStream);
+            return Gitlab.getSourceHeadSha(projectPath, mergeRequestId);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not get the head commit of the merge request", ex);
+            return null;
+        }
+    }
+
+    private SonarReport getReport(FilePath workspace) throws IOException, InterruptedException{
+        //parse on the node holding the workspace so only the new issues cross the channel
+        return workspace.act(new SonarReportCallable(this.sonarResults, getIssueFilter()));
+    }
+    
+    /**
+     * Keeps only the issues on lines the merge request added or changed.
+     * Issues without a line are kept when their file was changed. If the
+     * changes can not be fetched every issue is kept.
+     */
+    private SonarReport restrictToChangedLines(SonarReport report, int mergeRequestId, String sourceSha){
+        ChangedLines changedLines = getChangedLines(mergeRequestId, sourceSha);
+        if(changedLines == null){
+            LOGGER.log(Level.WARNING, "Reporting the issues on all lines");
             return report;
-        } finally {
-            if(resultsStream != null){
-                resultsStream.close();
+        }
+        List<SonarIssue> changed = new ArrayList<SonarIssue>();
+        for (SonarIssue newIssue : report.getNewIssues()){
+            String path = SonarComponent.pathOf(newIssue.getComponent());
+            if(newIssue.getLine() > 0 ? changedLines.contains(path, newIssue.getLine()) : changedLines.containsFile(path)){
+                changed.add(newIssue);
             }
         }
+        LOGGER.log(Level.INFO, "{0} of {1} new issues are on changed lines", new Object[]{changed.size(), report.getNewIssueCount()});
+        SonarReport restricted = new SonarReport(report.getVersion(), changed, report.getComponents(), report.getRules());
+        restricted.setTotalIssueCount(report.getTotalIssueCount());
+        restricted.setFixedIssueCount(report.getFixedIssueCount());
+        return restricted;
     }
-    
-    private void postComments(GitlabMergeRequest mergeRequest, SonarReport report){
+
+    private ChangedLines getChangedLines(int mergeRequestId, String sourceSha){
+        try {
+            return Gitlab.getChangedLines(projectPath, mergeRequestId, sourceSha);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not get the changes of the merge request", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Renders the notes, diff comments and commit status for the report,
+     * ready to be posted.
+     */
+    private PendingReport renderIssues(SonarReport report, int mergeRequestId, String sourceSha, String jobName, int buildNumber, CommitStatus commitStatus, long[] baseline){
         //we just care about the new issues
         List<SonarIssue> newIssues = report.getNewIssues();
         LOGGER.log(Level.INFO, "Number of new issues: {0}", newIssues.size());
+
+        if(CommitStatusMode.of(commitStatusMode) == CommitStatusMode.INSTEAD_OF_NOTE && commitStatus != null){
+            //the status links to the build, so nothing else needs to be rendered
+            return new PendingReport(projectPath, mergeRequestId, sourceSha, jobName, sonarResults, buildNumber,
+                    new ArrayList<String>(), new ArrayList<InlineCommentPublisher.Comment>(), commitStatus, baseline, report);
+        }
         
-        String comment = "";
-        for (SonarIssue issue : newIssues){
-            if(comment.length() > 0){
-                //we need to a few lines
-                comment = comment + "  \n";
+        List<SonarIssue> noteIssues = newIssues;
+        List<InlineCommentPublisher.Comment> inlineComments = new ArrayList<InlineCommentPublisher.Comment>();
+        if(isInlineComments()){
+            if(sourceSha == null){
+                LOGGER.log(Level.WARNING, "The built commit is not known, posting the issues as a note instead of on the diff");
+            } else {
+                ChangedLines changedLines = getChangedLines(mergeRequestId, sourceSha);
+                if(changedLines != null){
+                    //issues without a line, or in files the merge request did not change, stay in the note
+                    List<SonarIssue> inlineIssues = new ArrayList<SonarIssue>();
+                    noteIssues = new ArrayList<SonarIssue>();
+                    for (SonarIssue newIssue : newIssues){
+                        if(InlineCommentPublisher.isAnchored(newIssue)){
+                            inlineIssues.add(newIssue);
+                        } else {
+                            noteIssues.add(newIssue);
+                        }
+                    }
+                    inlineComments = InlineCommentPublisher.render(inlineIssues, changedLines, getIssueTemplate(), noteIssues);
+                }
+            }
+        }
+        List<String> notes;
+        if(baseline != null && newIssues.isEmpty() && (report.getFixedIssueCount() == null || report.getFixedIssueCount() == 0)){
+            //each incremental report gets notes of its own, so one with nothing to say is not posted
+            notes = new ArrayList<String>();
+        } else {
+            notes = renderNotes(report, noteIssues);
+        }
+        return new PendingReport(projectPath, mergeRequestId, sourceSha, jobName, sonarResults, buildNumber, notes, inlineComments, commitStatus, baseline, report);
+    }
+
+    private CommitStatus evaluateQualityGate(SonarReport report, String buildUrl){
+        try {
+            CommitStatus status = QualityGate.parse(qualityGateThresholds).evaluate(report, buildUrl);
+            LOGGER.log(Level.INFO, "Quality gate: {0}", status);
+            return status;
+        } catch (IllegalArgumentException ex) {
+            LOGGER.log(Level.WARNING, "The quality gate thresholds can not be read, no commit status is set", ex);
+            return null;
+        }
+    }
+
+    private List<String> renderNotes(SonarReport report, List<SonarIssue> issues){
+        MessageTemplate issue = getIssueTemplate();
+        DescriptorImpl descriptor = getDescriptor();
+        IssueGrouping grouping = IssueGrouping.of(issueGrouping);
+        int maxPerGroup = getMaxIssuesPerGroup();
+        List<Map.Entry<String, List<SonarIssue>>> groups = null;
+        int shownIssues = issues.size();
+        if(grouping != IssueGrouping.NONE){
+            groups = grouping.group(report, issues);
+            shownIssues = 0;
+            for (Map.Entry<String, List<SonarIssue>> group : groups){
+                shownIssues += Math.min(maxPerGroup, group.getValue().size());
+            }
+        }
+        //the marker that lets a later build find the note is added to each one when it is posted
+        NotePaginator notes = new NotePaginator(Math.max(1, descriptor.getMaxNoteLength() - MergeRequestNotes.MAX_MARKER_LENGTH), descriptor.getMaxNotes(),
+                getHeaderTemplate().render(report, null), getFooterTemplate().render(report, null),
+                shownIssues * (issue.getLiteralLength() + ESTIMATED_ISSUE_VALUES_LENGTH));
+        //each issue or group is rendered into the same buffer and then copied into its note
+        StringBuilder rendered = new StringBuilder(issue.getLiteralLength() + ESTIMATED_ISSUE_VALUES_LENGTH);
+        if(groups == null){
+            for (SonarIssue newIssue : issues){
+                rendered.setLength(0);
+                issue.appendTo(rendered, null, newIssue);
+                notes.add(rendered);
+            }
+        } else {
+            for (Map.Entry<String, List<SonarIssue>> group : groups){
+                List<SonarIssue> groupIssues = group.getValue();
+                int shown = Math.min(maxPerGroup, groupIssues.size());
+                rendered.setLength(0);
+                grouping.appendHeading(rendered, group.getKey(), groupIssues.size());
+                for (int i = 0; i < shown; i++){
+                    rendered.append(NotePaginator.ISSUE_SEPARATOR);
+                    issue.appendTo(rendered, null, groupIssues.get(i));
+                }
+                if(groupIssues.size() > shown){
+                    rendered.append(NotePaginator.ISSUE_SEPARATOR).append("*+").append(groupIssues.size() - shown).append(" more*");
+                }
+                //a group stays in one note, so the issues of a file or rule are read together
+                notes.add(rendered, groupIssues.size());
             }
-            comment = comment + issueMarkup(issue);
         }
-        comment = headerFooterMarkup(report, getMessageHeader())
-                + comment
-                + headerFooterMarkup(report, getMessageFooter());
-        LOGGER.log(Level.INFO, "Creating note on Gitlab.");
-        Gitlab.createNote(mergeRequest, comment);
+        if(notes.getOmitted() > 0){
+            LOGGER.log(Level.WARNING, "{0} new issues did not fit in {1} notes and were left out", new Object[]{notes.getOmitted(), descriptor.getMaxNotes()});
+        }
+        return notes.finish();
+    }
+
+    //a generic step leaves out the settings it does not name, which then use the defaults
+    public boolean isUseDefaultMessageHeader(){
+        return useDefaultMessageHeader == null || useDefaultMessageHeader;
+    }
+
+    public boolean isUseDefaultMessageIssue(){
+        return useDefaultMessageIssue == null || useDefaultMessageIssue;
+    }
+
+    public boolean isUseDefaultMessageFooter(){
+        return useDefaultMessageFooter == null || useDefaultMessageFooter;
     }
 
     public String getMessageHeader(){
-        if(this.useDefaultMessageHeader){
+        if(isUseDefaultMessageHeader()){
             return getDescriptor().getMessageHeader();
         }
         return this.messageHeader;
     }
 
     public String getMessageFooter(){
-        if(this.useDefaultMessageFooter){
+        if(isUseDefaultMessageFooter()){
             return getDescriptor().getMessageFooter();
         }
         return this.messageFooter;
     }
 
     public String getMessageIssue(){
-        if(this.useDefaultMessageIssue){
+        if(isUseDefaultMessageIssue()){
             return getDescriptor().getMessageIssue();
         }
         return this.messageIssue;
     }
     
-    private String headerFooterMarkup(SonarReport report, String template){
-        String message = template;
-        message = message.replaceAll("\\$NEW_ISSUE_COUNT", ""+report.getNewIssues().size());
-        message = message.replaceAll("\\$TOTAL_ISSUE_COUNT", ""+report.getIssues().size());
-        return message;
+    private MessageTemplate getHeaderTemplate(){
+        MessageTemplate template = compiled(headerTemplate, getMessageHeader());
+        headerTemplate = template;
+        return template;
     }
-    
-    private String issueMarkup(SonarIssue issue){
-        String message = getMessageIssue();
-        message = message.replaceAll("\\$KEY", issue.getSeverity());
-        message = message.replaceAll("\\$COMPONENT", issue.getComponent());
-        message = message.replaceAll("\\$LINE", ""+issue.getLine());
-        message = message.replaceAll("\\$MESSAGE", issue.getMessage());
-        message = message.replaceAll("\\$SEVERITY", issue.getSeverity());
-        message = message.replaceAll("\\$RULE", issue.getRule());
-        return message;
+
+    private MessageTemplate getIssueTemplate(){
+        MessageTemplate template = compiled(issueTemplate, getMessageIssue());
+        issueTemplate = template;
+        return template;
+    }
+
+    private MessageTemplate getFooterTemplate(){
+        MessageTemplate template = compiled(footerTemplate, getMessageFooter());
+        footerTemplate = template;
+        return template;
+    }
+
+    /**
+     * Reuses the compiled template unless its source has changed, which can
+     * happen when the job uses the global defaults and those are edited.
+     */
+    private static MessageTemplate compiled(MessageTemplate template, String source){
+        String text = source != null ? source : "";
+        if(template != null && template.getSource().equals(text)){
+            return template;
+        }
+        return MessageTemplate.compile(text);
     }
 
     @Override
@@ -212,6 +552,16 @@ public class GitlabSonarReporter extends Notifier {
      */
     public static final class DescriptorImpl extends BuildStepDescriptor<Publisher> {
 
+        public static final int DEFAULT_MAX_NOTE_LENGTH = 100000;
+        public static final int DEFAULT_MAX_NOTES = 10;
+        public static final int DEFAULT_INLINE_CONCURRENCY = 4;
+        public static final double DEFAULT_INLINE_REQUESTS_PER_SECOND = 5;
+        public static final int DEFAULT_PUBLISHER_THREADS = 2;
+        public static final int DEFAULT_PUBLISHER_QUEUE_SIZE = 100;
+        public static final int DEFAULT_REQUEST_TIMEOUT_SECONDS = 30;
+        public static final int DEFAULT_MAX_RETRIES = 3;
+        public static final double DEFAULT_REQUESTS_PER_SECOND = 10;
+
         private String botUsername = "jenkins";
         private String gitlabHostUrl;
         private String botApiToken;
@@ -219,6 +569,16 @@ public class GitlabSonarReporter extends Notifier {
         private String messageHeader;
         private String messageIssue;
         private String messageFooter;
+        private int maxNoteLength = DEFAULT_MAX_NOTE_LENGTH;
+        private int maxNotes = DEFAULT_MAX_NOTES;
+        private int inlineConcurrency = DEFAULT_INLINE_CONCURRENCY;
+        private double inlineRequestsPerSecond = DEFAULT_INLINE_REQUESTS_PER_SECOND;
+        private boolean asyncPublishing = false;
+        private int publisherThreads = DEFAULT_PUBLISHER_THREADS;
+        private int publisherQueueSize = DEFAULT_PUBLISHER_QUEUE_SIZE;
+        private int requestTimeoutSeconds = DEFAULT_REQUEST_TIMEOUT_SECONDS;
+        private Integer maxRetries = DEFAULT_MAX_RETRIES;
+        private double requestsPerSecond = DEFAULT_REQUESTS_PER_SECOND;
         
 
         public DescriptorImpl() {
@@ -235,6 +595,40 @@ public class GitlabSonarReporter extends Notifier {
             return "Gitlab Merge Request Sonar Results Poster";
         }
 
+        public ListBoxModel doFillMinimumSeverityItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add("All", "");
+            for (SonarSeverity severity : SonarSeverity.values()) {
+                items.add(severity.name(), severity.name());
+            }
+            return items;
+        }
+
+        public ListBoxModel doFillCommitStatusModeItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (CommitStatusMode mode : CommitStatusMode.values()) {
+                items.add(mode.getDisplayName(), mode.name());
+            }
+            return items;
+        }
+
+        public FormValidation doCheckQualityGateThresholds(@QueryParameter String value) {
+            try {
+                QualityGate.parse(value);
+                return FormValidation.ok();
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        public ListBoxModel doFillIssueGroupingItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (IssueGrouping grouping : IssueGrouping.values()) {
+                items.add(grouping.getDisplayName(), grouping.name());
+            }
+            return items;
+        }
+
         @Override
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
             botUsername = formData.getString("botUsername");
@@ -244,8 +638,20 @@ public class GitlabSonarReporter extends Notifier {
             messageHeader = formData.getString("messageHeader");
             messageIssue = formData.getString("messageIssue");
             messageFooter = formData.getString("messageFooter");
+            maxNoteLength = formData.optInt("maxNoteLength", DEFAULT_MAX_NOTE_LENGTH);
+            maxNotes = formData.optInt("maxNotes", DEFAULT_MAX_NOTES);
+            inlineConcurrency = formData.optInt("inlineConcurrency", DEFAULT_INLINE_CONCURRENCY);
+            inlineRequestsPerSecond = formData.optDouble("inlineRequestsPerSecond", DEFAULT_INLINE_REQUESTS_PER_SECOND);
+            asyncPublishing = formData.optBoolean("asyncPublishing", false);
+            publisherThreads = formData.optInt("publisherThreads", DEFAULT_PUBLISHER_THREADS);
+            publisherQueueSize = formData.optInt("publisherQueueSize", DEFAULT_PUBLISHER_QUEUE_SIZE);
+            requestTimeoutSeconds = formData.optInt("requestTimeoutSeconds", DEFAULT_REQUEST_TIMEOUT_SECONDS);
+            maxRetries = formData.optInt("maxRetries", DEFAULT_MAX_RETRIES);
+            requestsPerSecond = formData.optDouble("requestsPerSecond", DEFAULT_REQUESTS_PER_SECOND);
 
             save();
+            //the next request connects with the new settings
+            Gitlab.reset();
 
             return super.configure(req, formData);
         }
@@ -274,6 +680,75 @@ public class GitlabSonarReporter extends Notifier {
             return FormValidation.ok();
         }
 
+        public FormValidation doCheckMaxNoteLength(@QueryParameter String value) {
+            return checkPositiveInteger(value);
+        }
+
+        public FormValidation doCheckMaxNotes(@QueryParameter String value) {
+            return checkPositiveInteger(value);
+        }
+
+        public FormValidation doCheckMaxIssuesPerGroup(@QueryParameter String value) {
+            return checkPositiveInteger(value);
+        }
+
+        public FormValidation doCheckRequestTimeoutSeconds(@QueryParameter String value) {
+            return checkPositiveInteger(value);
+        }
+
+        public FormValidation doCheckMaxRetries(@QueryParameter String value) {
+            try {
+                if (Integer.parseInt(value) >= 0) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                //reported below
+            }
+            return FormValidation.error("You must provide a number that is zero or more");
+        }
+
+        public FormValidation doCheckPublisherThreads(@QueryParameter String value) {
+            return checkPositiveInteger(value);
+        }
+
+        public FormValidation doCheckPublisherQueueSize(@QueryParameter String value) {
+            return checkPositiveInteger(value);
+        }
+
+        public FormValidation doCheckInlineConcurrency(@QueryParameter String value) {
+            return checkPositiveInteger(value);
+        }
+
+        public FormValidation doCheckInlineRequestsPerSecond(@QueryParameter String value) {
+            return checkPositiveNumber(value);
+        }
+
+        public FormValidation doCheckRequestsPerSecond(@QueryParameter String value) {
+            return checkPositiveNumber(value);
+        }
+
+        private static FormValidation checkPositiveNumber(String value) {
+            try {
+                if (Double.parseDouble(value) > 0) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                //reported below
+            }
+            return FormValidation.error("You must provide a number greater than zero");
+        }
+
+        private static FormValidation checkPositiveInteger(String value) {
+            try {
+                if (Integer.parseInt(value) > 0) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                //reported below
+            }
+            return FormValidation.error("You must provide a number greater than zero");
+        }
+
         public boolean isIgnoreCertificateErrors() {
             return ignoreCertificateErrors;
         }
@@ -301,6 +776,69 @@ public class GitlabSonarReporter extends Notifier {
         public String getMessageFooter() {
             return messageFooter;
         }
+
+        public int getMaxNoteLength() {
+            //configurations saved before this setting existed load it as zero
+            return maxNoteLength > 0 ? maxNoteLength : DEFAULT_MAX_NOTE_LENGTH;
+        }
+
+        public int getMaxNotes() {
+            return maxNotes > 0 ? maxNotes : DEFAULT_MAX_NOTES;
+        }
+
+        public int getInlineConcurrency() {
+            return inlineConcurrency > 0 ? inlineConcurrency : DEFAULT_INLINE_CONCURRENCY;
+        }
+
+        public double getInlineRequestsPerSecond() {
+            return inlineRequestsPerSecond > 0 ? inlineRequestsPerSecond : DEFAULT_INLINE_REQUESTS_PER_SECOND;
+        }
+
+        public boolean isAsyncPublishing() {
+            return asyncPublishing;
+        }
+
+        public int getPublisherThreads() {
+            return publisherThreads > 0 ? publisherThreads : DEFAULT_PUBLISHER_THREADS;
+        }
+
+        public int getPublisherQueueSize() {
+            return publisherQueueSize > 0 ? publisherQueueSize : DEFAULT_PUBLISHER_QUEUE_SIZE;
+        }
+
+        public int getPublisherQueueDepth() {
+            return ReportPublisher.getQueueDepth();
+        }
+
+        public int getRequestTimeoutSeconds() {
+            return requestTimeoutSeconds > 0 ? requestTimeoutSeconds : DEFAULT_REQUEST_TIMEOUT_SECONDS;
+        }
+
+        public int getMaxRetries() {
+            //zero is a valid setting, so a missing one is told apart by being null
+            return maxRetries != null && maxRetries >= 0 ? maxRetries : DEFAULT_MAX_RETRIES;
+        }
+
+        public String getCircuitBreakerState() {
+            return Gitlab.getCircuitBreakerState().name();
+        }
+
+        public double getRequestsPerSecond() {
+            return requestsPerSecond > 0 ? requestsPerSecond : DEFAULT_REQUESTS_PER_SECOND;
+        }
+
+        public int getRateLimitBudget() {
+            return Gitlab.getRateLimitBudget();
+        }
+
+        public String getProjectCacheStatistics() {
+            return Gitlab.getProjectCacheHits() + " hits, " + Gitlab.getProjectCacheMisses() + " misses";
+        }
+
+        public String getMergeRequestCacheStatistics() {
+            return Gitlab.getMergeRequestCacheHits() + " hits, " + Gitlab.getMergeRequestCacheNotModified() + " not modified, "
+                    + Gitlab.getMergeRequestCacheMisses() + " misses";
+        }
         
 
     }
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import hudson.Util;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.plugins.gitlab.ChangedLines;
+import jenkins.plugins.gitlab.ExpiringCache;
+import jenkins.plugins.gitlab.Gitlab;
+import jenkins.plugins.gitlab.RateLimiter;
+import jenkins.plugins.sonarparser.models.SonarComponent;
+import jenkins.plugins.sonarparser.models.SonarIssue;
+import org.gitlab.api.models.GitlabMergeRequest;
+
+/**
+ * Posts the issues as comments on the lines they were found on. Version 3 of
+ * the Gitlab API can not start a discussion on the merge request diff, so
+ * these are comments on the lines of the merge request's head commit, which
+ * Gitlab shows on the commit and in the merge request's discussion. Issues
+ * on the same line share a comment, and each file is posted as one batch.
+ * <p>
+ * The batches of all builds share one small pool of threads and one rate, so
+ * the number of files commented on at once and the comments created per
+ * second are limits for the whole of Jenkins, not for each build.
+ * <p>
+ * Comments can not be updated, so the ones created for each report are
+ * remembered, and a report delivered again for the same commit, such as a
+ * rebuild, only creates the comments that are not there yet.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public final class InlineCommentPublisher {
+
+    private static final Logger LOGGER = Logger.getLogger(InlineCommentPublisher.class.getName());
+
+    private static ThreadPoolExecutor EXECUTOR;
+
+    private static final RateLimiter RATE_LIMITER = new RateLimiter(GitlabSonarReporter.DescriptorImpl.DEFAULT_INLINE_REQUESTS_PER_SECOND);
+
+    private static final int CACHE_SIZE = 500;
+    private static final long CACHE_TTL = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The hashes of the comments created for each report on each commit.
+     */
+    private static final ExpiringCache<String, Set<String>> POSTED = new ExpiringCache<String, Set<String>>(CACHE_SIZE, CACHE_TTL);
+
+    private InlineCommentPublisher() {
+    }
+
+    /**
+     * Whether the issue can be put on a line of the diff.
+     */
+    public static boolean isAnchored(SonarIssue issue) {
+        return issue.getLine() > 0 && issue.getComponent() != null;
+    }
+
+    /**
+     * Renders one comment for each line that has issues, ordered by file and
+     * then by line.
+     *
+     * @param issues the issues to render, all of which must be
+     * {@link #isAnchored(SonarIssue) anchored}
+     * @param changedLines the files of the merge request, which turn the
+     * paths in the sonar results, relative to their module, into paths in the
+     * repository
+     * @param unplaced receives the issues in files the merge request did not
+     * change, which have no place in its diff
+     */
+    public static List<Comment> render(List<SonarIssue> issues, ChangedLines changedLines, MessageTemplate template, List<SonarIssue> unplaced) {
+        List<Comment> comments = new ArrayList<Comment>();
+        StringBuilder body = new StringBuilder();
+        for (Map.Entry<String, TreeMap<Integer, List<SonarIssue>>> file : groupByFileAndLine(issues, changedLines, unplaced).entrySet()) {
+            for (Map.Entry<Integer, List<SonarIssue>> line : file.getValue().entrySet()) {
+                body.setLength(0);
+                for (SonarIssue issue : line.getValue()) {
+                    if (body.length() > 0) {
+                        body.append(NotePaginator.ISSUE_SEPARATOR);
+                    }
+                    template.appendTo(body, null, issue);
+                }
+                comments.add(new Comment(file.getKey(), line.getKey(), body.toString()));
+            }
+        }
+        return comments;
+    }
+
+    /**
+     * Posts the comments that were not already created for the report on
+     * the commit, and waits for them to finish.
+     *
+     * @param reportKey the {@link PendingReport#getReportKey() report} the
+     * comments belong to
+     * @param comments the comments, as {@link #render rendered}
+     * @param concurrency the most files to post at the same time, across all
+     * builds
+     * @param requestsPerSecond the most comments to create per second,
+     * across all builds
+     * @return the number of comments that could not be created
+     */
+    public static int publish(final GitlabMergeRequest mergeRequest, final String sha, String reportKey, List<Comment> comments, int concurrency, double requestsPerSecond) throws InterruptedException {
+        final Set<String> posted = postedOn(reportKey, sha);
+        Map<String, List<Comment>> files = new LinkedHashMap<String, List<Comment>>();
+        int skipped = 0;
+        for (Comment comment : comments) {
+            if (posted.contains(comment.hash())) {
+                skipped++;
+                continue;
+            }
+            List<Comment> file = files.get(comment.path);
+            if (file == null) {
+                file = new ArrayList<Comment>();
+                files.put(comment.path, file);
+            }
+            file.add(comment);
+        }
+        if (skipped > 0) {
+            LOGGER.log(Level.INFO, "{0} comment(s) are already on the diff", skipped);
+        }
+        if (files.isEmpty()) {
+            return 0;
+        }
+        List<Callable<Integer>> batches = new ArrayList<Callable<Integer>>(files.size());
+        for (final List<Comment> file : files.values()) {
+            batches.add(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    return publishFile(mergeRequest, sha, file, posted);
+                }
+            });
+        }
+        RATE_LIMITER.setRate(requestsPerSecond);
+        int failed = 0;
+        for (Future<Integer> batch : executor(Math.max(1, concurrency)).invokeAll(batches)) {
+            try {
+                failed += batch.get();
+            } catch (ExecutionException e) {
+                LOGGER.log(Level.SEVERE, "Failed to post comments for a file", e.getCause());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * The hashes of the comments created for the report on the commit, which
+     * the caller adds to as it creates more.
+     */
+    private static Set<String> postedOn(String reportKey, String sha) {
+        String key = reportKey + "@" + sha;
+        synchronized (POSTED) {
+            Set<String> posted = POSTED.get(key);
+            if (posted == null) {
+                posted = Collections.synchronizedSet(new HashSet<String>());
+                POSTED.put(key, posted);
+            }
+            return posted;
+        }
+    }
+
+    /**
+     * Returns the pool shared by all builds, adjusted to the configured
+     * number of threads.
+     */
+    private static synchronized ThreadPoolExecutor executor(int threads) {
+        if (EXECUTOR == null) {
+            EXECUTOR = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ReportPublisher.WorkerThreadFactory("Gitlab Sonar Reporter diff comments"));
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        } else if (threads > EXECUTOR.getMaximumPoolSize()) {
+            EXECUTOR.setMaximumPoolSize(threads);
+            EXECUTOR.setCorePoolSize(threads);
+        } else if (threads < EXECUTOR.getMaximumPoolSize()) {
+            EXECUTOR.setCorePoolSize(threads);
+            EXECUTOR.setMaximumPoolSize(threads);
+        }
+        return EXECUTOR;
+    }
+
+    private static Map<String, TreeMap<Integer, List<SonarIssue>>> groupByFileAndLine(List<SonarIssue> issues, ChangedLines changedLines, List<SonarIssue> unplaced) {
+        Map<String, TreeMap<Integer, List<SonarIssue>>> files = new LinkedHashMap<String, TreeMap<Integer, List<SonarIssue>>>();
+        for (SonarIssue issue : issues) {
+            String path = changedLines.repositoryPathOf(SonarComponent.pathOf(issue.getComponent()));
+            if (path == null) {
+                unplaced.add(issue);
+                continue;
+            }
+            TreeMap<Integer, List<SonarIssue>> lines = files.get(path);
+            if (lines == null) {
+                lines = new TreeMap<Integer, List<SonarIssue>>();
+                files.put(path, lines);
+            }
+            List<SonarIssue> onLine = lines.get(issue.getLine());
+            if (onLine == null) {
+                onLine = new ArrayList<SonarIssue>(1);
+                lines.put(issue.getLine(), onLine);
+            }
+            onLine.add(issue);
+        }
+        return files;
+    }
+
+    private static int publishFile(GitlabMergeRequest mergeRequest, String sha, List<Comment> comments, Set<String> posted) throws InterruptedException {
+        int failed = 0;
+        for (Comment comment : comments) {
+            //never paused, so this only waits for the comment's turn
+            RATE_LIMITER.tryAcquire();
+            if (Gitlab.createCommitComment(mergeRequest, sha, comment.path, comment.line, comment.body)) {
+                posted.add(comment.hash());
+            } else {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * A rendered comment for one line of a file.
+     */
+    public static final class Comment implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+        private final int line;
+        private final String body;
+
+        public Comment(String path, int line, String body) {
+            this.path = path;
+            this.line = line;
+            this.body = body;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * Tells the comment apart from others on the same commit.
+         */
+        String hash() {
+            return Util.getDigestOf(path + "\n" + line + "\n" + body);
+        }
+    }
+
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.plugins.gitlab.Gitlab;
+import jenkins.plugins.gitlab.GitlabUnavailableException;
+import jenkins.plugins.sonarparser.IssueFingerprint;
+import jenkins.plugins.sonarparser.models.SonarIssue;
+import jenkins.plugins.sonarparser.models.SonarReport;
+import org.gitlab.api.models.GitlabMergeRequest;
+
+/**
+ * Remembers the new issues last reported for each report on a merge request,
+ * so the next build can report only what changed since then. Each merge
+ * request has a directory under JENKINS_HOME, holding a small file for each
+ * of its reports. The file starts with the project and merge request,
+ * followed by the sorted {@link IssueFingerprint fingerprints} of the
+ * report's issues, eight bytes each. A file is only read while a build
+ * compares against it, so nothing is kept in memory between builds.
+ * <p>
+ * A build only reads the baseline. The new one is saved once the report has
+ * been posted, so issues of a report that was dropped or never made it to
+ * Gitlab are reported again by the next build.
+ * <p>
+ * The directory of a merge request is removed when a report posted to it
+ * finds it merged or closed, without reading the files in it. A daily sweep
+ * reads one file of each directory left to find its merge request, asks
+ * Gitlab about it, and removes the directories of merge requests that were
+ * merged, closed or deleted since, as well as any file not written for a
+ * while.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public final class IssueBaselines {
+
+    private static final Logger LOGGER = Logger.getLogger(IssueBaselines.class.getName());
+
+    private static final String DIRECTORY = "gitlab-sonar-reporter-baselines";
+    private static final String EXTENSION = ".fingerprints";
+    //marks the start of a file in the current format
+    private static final int FORMAT = 0x47534232;
+
+    private static final long TIME_TO_LIVE = TimeUnit.DAYS.toMillis(30);
+
+    //where the baselines are kept instead of JENKINS_HOME, if anywhere
+    private static File root;
+
+    private IssueBaselines() {
+    }
+
+    /**
+     * Keeps the baselines under another directory than JENKINS_HOME, or
+     * under JENKINS_HOME again when null.
+     */
+    static synchronized void setRoot(File root) {
+        IssueBaselines.root = root;
+    }
+
+    /**
+     * The fingerprints of the report's new issues, in the form they are saved
+     * as a baseline.
+     */
+    public static long[] fingerprintsOf(SonarReport report) {
+        List<SonarIssue> newIssues = report.getNewIssues();
+        long[] fingerprints = new long[newIssues.size()];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = IssueFingerprint.of(newIssues.get(i));
+        }
+        return distinctSorted(fingerprints);
+    }
+
+    /**
+     * Reduces the issues found to those that were not in the last report
+     * posted, counting the ones that have gone as fixed. When there is no
+     * baseline yet every issue is reported.
+     *
+     * @param pending the report being rendered, which tells which baseline
+     * it is compared to
+     * @param report the issues found
+     */
+    public static synchronized SonarReport delta(PendingReport pending, SonarReport report) {
+        List<SonarIssue> newIssues = report.getNewIssues();
+        long[] current = fingerprintsOf(report);
+        Baseline previous = read(fileFor(pending), true);
+        if (previous == null) {
+            return report;
+        }
+
+        List<SonarIssue> added = new ArrayList<SonarIssue>();
+        for (SonarIssue newIssue : newIssues) {
+            if (Arrays.binarySearch(previous.fingerprints, IssueFingerprint.of(newIssue)) < 0) {
+                added.add(newIssue);
+            }
+        }
+        int fixed = 0;
+        for (long fingerprint : previous.fingerprints) {
+            if (Arrays.binarySearch(current, fingerprint) < 0) {
+                fixed++;
+            }
+        }
+        SonarReport delta = new SonarReport(report.getVersion(), added, report.getComponents(), report.getRules());
+        delta.setTotalIssueCount(report.getTotalIssueCount());
+        delta.setFixedIssueCount(fixed);
+        LOGGER.log(Level.INFO, "{0} issue(s) added and {1} fixed since the last report", new Object[]{added.size(), fixed});
+        return delta;
+    }
+
+    /**
+     * Makes the fingerprints the baseline the next build of the report is
+     * compared to. Called once the report has been posted.
+     */
+    public static synchronized void save(PendingReport report) {
+        long[] fingerprints = report.getBaseline();
+        if (fingerprints != null) {
+            write(fileFor(report), new Baseline(report.getProjectPath(), report.getMergeRequestId(), fingerprints));
+        }
+    }
+
+    /**
+     * Forgets the baselines of a merge request that will not be built again.
+     */
+    public static synchronized void evict(String projectPath, int mergeRequestId) {
+        File directory = directoryFor(projectPath, mergeRequestId);
+        File[] files = directory != null ? directory.listFiles() : null;
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                LOGGER.log(Level.WARNING, "Could not delete the baseline {0}", file);
+            }
+        }
+        directory.delete();
+    }
+
+    private static long[] distinctSorted(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    /**
+     * @param fingerprints whether to read the fingerprints, or only which
+     * merge request the file is for
+     */
+    private static Baseline read(File file, boolean fingerprints) {
+        if (file == null) {
+            return null;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != FORMAT) {
+                //left by an older version, so the next build starts over
+                return null;
+            }
+            String projectPath = input.readUTF();
+            int mergeRequestId = input.readInt();
+            if (!fingerprints) {
+                return new Baseline(projectPath, mergeRequestId, null);
+            }
+            long[] values = new long[input.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = input.readLong();
+            }
+            return new Baseline(projectPath, mergeRequestId, values);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read the baseline " + file, e);
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private static void write(File file, Baseline baseline) {
+        if (file == null) {
+            return;
+        }
+        File directory = file.getParentFile();
+        File temp = new File(directory, file.getName() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create the baseline directory " + directory);
+            }
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            output.writeInt(FORMAT);
+            output.writeUTF(baseline.projectPath);
+            output.writeInt(baseline.mergeRequestId);
+            output.writeInt(baseline.fingerprints.length);
+            for (long fingerprint : baseline.fingerprints) {
+                output.writeLong(fingerprint);
+            }
+            output.close();
+            output = null;
+            //replace the old baseline in one step, so a crash never leaves half of one
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("Could not replace " + file);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write the baseline " + file, e);
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                //nothing more can be done
+            }
+        }
+    }
+
+    private static synchronized File directory() {
+        if (root != null) {
+            return new File(root, DIRECTORY);
+        }
+        Jenkins jenkins = Jenkins.getInstance();
+        return jenkins != null ? new File(jenkins.getRootDir(), DIRECTORY) : null;
+    }
+
+    private static File directoryFor(String projectPath, int mergeRequestId) {
+        File directory = directory();
+        if (directory == null) {
+            return null;
+        }
+        return new File(directory, Util.getDigestOf(projectPath + "!" + mergeRequestId));
+    }
+
+    private static File fileFor(PendingReport report) {
+        File directory = directoryFor(report.getProjectPath(), report.getMergeRequestId());
+        if (directory == null) {
+            return null;
+        }
+        return new File(directory, Util.getDigestOf(report.getReportKey()) + EXTENSION);
+    }
+
+    /**
+     * What is stored for each report.
+     */
+    private static final class Baseline {
+
+        private final String projectPath;
+        private final int mergeRequestId;
+        //null when only the merge request was read
+        private final long[] fingerprints;
+
+        private Baseline(String projectPath, int mergeRequestId, long[] fingerprints) {
+            this.projectPath = projectPath;
+            this.mergeRequestId = mergeRequestId;
+            this.fingerprints = fingerprints;
+        }
+    }
+
+    /**
+     * Removes the baselines of merge requests that were merged, closed or
+     * deleted, and of those that have not been built for a while. When
+     * Gitlab can not be asked, only the old baselines are removed.
+     */
+    @Extension
+    public static final class Sweeper extends AsyncPeriodicWork {
+
+        public Sweeper() {
+            super("Gitlab Sonar Reporter baseline sweeper");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return DAY;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException, InterruptedException {
+            File directory = directory();
+            File[] entries = directory != null ? directory.listFiles() : null;
+            if (entries == null) {
+                return;
+            }
+            long expired = System.currentTimeMillis() - TIME_TO_LIVE;
+            List<Baseline> mergeRequests = new ArrayList<Baseline>();
+            for (File entry : entries) {
+                if (!entry.isDirectory()) {
+                    //left by a version that kept every baseline in one directory
+                    delete(entry, listener);
+                    continue;
+                }
+                Baseline mergeRequest = null;
+                File[] files = entry.listFiles();
+                for (File file : files != null ? files : new File[0]) {
+                    if (!file.getName().endsWith(EXTENSION)) {
+                        continue;
+                    }
+                    if (file.lastModified() < expired) {
+                        delete(file, listener);
+                    } else if (mergeRequest == null) {
+                        mergeRequest = read(file, false);
+                    }
+                }
+                if (mergeRequest != null) {
+                    mergeRequests.add(mergeRequest);
+                } else {
+                    delete(entry, listener);
+                }
+            }
+            //one request per merge request, made without holding the lock builds need
+            for (Baseline baseline : mergeRequests) {
+                String name = baseline.projectPath + "!" + baseline.mergeRequestId;
+                GitlabMergeRequest mergeRequest;
+                try {
+                    mergeRequest = Gitlab.getMergeRequest(baseline.projectPath, baseline.mergeRequestId);
+                } catch (GitlabUnavailableException e) {
+                    listener.getLogger().println("Gitlab is unavailable, the remaining baselines are checked tomorrow");
+                    return;
+                } catch (IOException e) {
+                    if (!Gitlab.isPermanent(e)) {
+                        listener.getLogger().println("Could not check merge request " + name + ": " + e.getMessage());
+                        continue;
+                    }
+                    //deleted, or the Jenkins user can no longer see it
+                    mergeRequest = null;
+                }
+                if (mergeRequest == null || "merged".equals(mergeRequest.getState()) || "closed".equals(mergeRequest.getState())) {
+                    evict(baseline.projectPath, baseline.mergeRequestId);
+                }
+            }
+        }
+
+        /**
+         * Deletes a file, or a directory once it is empty.
+         */
+        private static void delete(File file, TaskListener listener) {
+            synchronized (IssueBaselines.class) {
+                String[] left = file.list();
+                if (left != null && left.length > 0) {
+                    //a build saved a baseline in it since it was looked at
+                    return;
+                }
+                if (file.exists() && !file.delete()) {
+                    listener.getLogger().println("Could not delete the baseline " + file);
+                }
+            }
+        }
+    }
+
+}
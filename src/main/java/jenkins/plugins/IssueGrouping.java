@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import jenkins.plugins.sonarparser.models.SonarIssue;
+import jenkins.plugins.sonarparser.models.SonarReport;
+import jenkins.plugins.sonarparser.models.SonarSeverity;
+
+/**
+ * How the issues in a note are grouped. Within a group the issues are
+ * sorted from the most to the least severe, and the groups are ordered by
+ * their most severe issue and then by their size.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public enum IssueGrouping {
+
+    NONE("Do not group"),
+    COMPONENT("By file"),
+    RULE("By rule");
+
+    private final String displayName;
+
+    private IssueGrouping(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * @return the grouping with the given name, or {@link #NONE} if there is
+     * none
+     */
+    public static IssueGrouping of(String name) {
+        if (name != null) {
+            for (IssueGrouping grouping : values()) {
+                if (grouping.name().equals(name)) {
+                    return grouping;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Groups the issues, which are either all the new issues of the report or
+     * a part of them.
+     */
+    public List<Map.Entry<String, List<SonarIssue>>> group(SonarReport report, List<SonarIssue> issues) {
+        Map<String, List<SonarIssue>> groups;
+        if (issues == report.getNewIssues()) {
+            //the report has already grouped all of its new issues
+            groups = this == COMPONENT ? report.getNewIssuesByComponent() : report.getNewIssuesByRule();
+        } else {
+            groups = new LinkedHashMap<String, List<SonarIssue>>();
+            for (SonarIssue issue : issues) {
+                String key = this == COMPONENT ? issue.getComponent() : issue.getRule();
+                List<SonarIssue> group = groups.get(key);
+                if (group == null) {
+                    group = new ArrayList<SonarIssue>();
+                    groups.put(key, group);
+                }
+                group.add(issue);
+            }
+        }
+        List<Map.Entry<String, List<SonarIssue>>> sorted = new ArrayList<Map.Entry<String, List<SonarIssue>>>(groups.size());
+        for (Map.Entry<String, List<SonarIssue>> entry : groups.entrySet()) {
+            List<SonarIssue> group = new ArrayList<SonarIssue>(entry.getValue());
+            Collections.sort(group, SonarSeverity.MOST_SEVERE_FIRST);
+            sorted.add(new Group(entry.getKey(), group));
+        }
+        Collections.sort(sorted, MOST_SEVERE_GROUP_FIRST);
+        return sorted;
+    }
+
+    /**
+     * Writes the line that starts a group.
+     */
+    public void appendHeading(StringBuilder out, String key, int issueCount) {
+        if (this == COMPONENT) {
+            out.append("**`").append(key).append("`**");
+        } else {
+            out.append("**").append(key).append("**");
+        }
+        out.append(" (").append(issueCount).append(issueCount == 1 ? " new issue)" : " new issues)");
+    }
+
+    private static final Comparator<Map.Entry<String, List<SonarIssue>>> MOST_SEVERE_GROUP_FIRST = new Comparator<Map.Entry<String, List<SonarIssue>>>() {
+        public int compare(Map.Entry<String, List<SonarIssue>> first, Map.Entry<String, List<SonarIssue>> second) {
+            //the groups are sorted already, so their first issue is the most severe
+            int bySeverity = SonarSeverity.MOST_SEVERE_FIRST.compare(first.getValue().get(0), second.getValue().get(0));
+            if (bySeverity != 0) {
+                return bySeverity;
+            }
+            return second.getValue().size() - first.getValue().size();
+        }
+    };
+
+    private static final class Group implements Map.Entry<String, List<SonarIssue>> {
+
+        private final String key;
+        private final List<SonarIssue> issues;
+
+        private Group(String key, List<SonarIssue> issues) {
+            this.key = key;
+            this.issues = issues;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public List<SonarIssue> getValue() {
+            return issues;
+        }
+
+        public List<SonarIssue> setValue(List<SonarIssue> value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
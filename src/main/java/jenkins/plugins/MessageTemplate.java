@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import jenkins.plugins.sonarparser.models.SonarIssue;
+import jenkins.plugins.sonarparser.models.SonarReport;
+
+/**
+ * A message template that has been split once into literal text and
+ * variables, so rendering it is a single pass that appends to a
+ * {@link StringBuilder}. Values are inserted as they are, so a $ or \ in a
+ * sonar message is never interpreted.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public final class MessageTemplate {
+
+    public enum Variable {
+
+        NEW_ISSUE_COUNT, TOTAL_ISSUE_COUNT, FIXED_ISSUE_COUNT, KEY, COMPONENT, LINE, MESSAGE, SEVERITY, RULE;
+
+        /**
+         * Appends the value of the variable, returning false if the value is
+         * not available from what is being rendered.
+         */
+        boolean appendTo(StringBuilder out, SonarReport report, SonarIssue issue) {
+            switch (this) {
+                case NEW_ISSUE_COUNT:
+                    if (report == null) {
+                        return false;
+                    }
+                    out.append(report.getNewIssueCount());
+                    return true;
+                case TOTAL_ISSUE_COUNT:
+                    if (report == null) {
+                        return false;
+                    }
+                    out.append(report.getTotalIssueCount());
+                    return true;
+                case FIXED_ISSUE_COUNT:
+                    if (report == null) {
+                        return false;
+                    }
+                    //without an earlier report to compare to nothing is known to be fixed
+                    out.append(report.getFixedIssueCount() != null ? report.getFixedIssueCount() : 0);
+                    return true;
+                default:
+                    if (issue == null) {
+                        return false;
+                    }
+                    appendIssueValue(out, issue);
+                    return true;
+            }
+        }
+
+        private void appendIssueValue(StringBuilder out, SonarIssue issue) {
+            switch (this) {
+                case KEY:
+                    appendText(out, issue.getKey());
+                    break;
+                case COMPONENT:
+                    appendText(out, issue.getComponent());
+                    break;
+                case LINE:
+                    out.append(issue.getLine());
+                    break;
+                case MESSAGE:
+                    appendText(out, issue.getMessage());
+                    break;
+                case SEVERITY:
+                    appendText(out, issue.getSeverity());
+                    break;
+                case RULE:
+                    appendText(out, issue.getRule());
+                    break;
+                default:
+                    throw new IllegalStateException("Not an issue variable: " + this);
+            }
+        }
+
+        private static void appendText(StringBuilder out, String text) {
+            if (text != null) {
+                out.append(text);
+            }
+        }
+    }
+
+    /**
+     * The variables in the order they are tried, longest name first, so one
+     * name that starts another can never shadow it.
+     */
+    private static final Variable[] BY_NAME_LENGTH = {
+        Variable.TOTAL_ISSUE_COUNT, Variable.FIXED_ISSUE_COUNT, Variable.NEW_ISSUE_COUNT, Variable.COMPONENT, Variable.SEVERITY,
+        Variable.MESSAGE, Variable.LINE, Variable.RULE, Variable.KEY
+    };
+
+    private final String source;
+    private final String[] literals;
+    private final Variable[] variables;
+    private final int literalLength;
+
+    private MessageTemplate(String source, List<String> literals, List<Variable> variables) {
+        this.source = source;
+        this.literals = literals.toArray(new String[literals.size()]);
+        this.variables = variables.toArray(new Variable[variables.size()]);
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Compiles the template. A null template is treated as an empty one.
+     */
+    public static MessageTemplate compile(String source) {
+        String text = source != null ? source : "";
+        List<String> literals = new ArrayList<String>();
+        List<Variable> variables = new ArrayList<Variable>();
+        int start = 0;
+        int index = text.indexOf('$');
+        while (index >= 0) {
+            Variable variable = variableAt(text, index + 1);
+            if (variable == null) {
+                index = text.indexOf('$', index + 1);
+                continue;
+            }
+            literals.add(text.substring(start, index));
+            variables.add(variable);
+            start = index + 1 + variable.name().length();
+            index = text.indexOf('$', start);
+        }
+        literals.add(text.substring(start));
+        return new MessageTemplate(text, literals, variables);
+    }
+
+    private static Variable variableAt(String text, int offset) {
+        for (Variable variable : BY_NAME_LENGTH) {
+            if (text.startsWith(variable.name(), offset)) {
+                return variable;
+            }
+        }
+        return null;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * The length of the template without its variables, useful for sizing
+     * the buffer it is rendered into.
+     */
+    public int getLiteralLength() {
+        return literalLength;
+    }
+
+    /**
+     * Renders the template onto the end of the buffer. Variables whose value
+     * is not available, such as issue variables in the header, are left as
+     * they were written.
+     */
+    public void appendTo(StringBuilder out, SonarReport report, SonarIssue issue) {
+        out.append(literals[0]);
+        for (int i = 0; i < variables.length; i++) {
+            Variable variable = variables[i];
+            if (!variable.appendTo(out, report, issue)) {
+                out.append('$').append(variable.name());
+            }
+            out.append(literals[i + 1]);
+        }
+    }
+
+    public String render(SonarReport report, SonarIssue issue) {
+        StringBuilder out = new StringBuilder(literalLength + 64 * variables.length);
+        appendTo(out, report, issue);
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the rendered issues over as many notes as needed to keep each note
+ * within a maximum length. Notes are only split between issues. The header
+ * starts the first note and the footer ends the last one. A header too long
+ * to leave room for the first issue is posted as a note of its own. Once the
+ * maximum number of notes is reached the remaining issues are counted but
+ * not shown.
+ * <p>
+ * Only text that does not fit in a note on its own is cut short. It is cut at
+ * a line break or space, so no word or link is split, marked with an
+ * ellipsis, and any code block or inline code it leaves open is closed so the
+ * markdown after it still renders.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class NotePaginator {
+
+    static final String ISSUE_SEPARATOR = "  \n";
+
+    //room kept free for the line saying how many issues were left out
+    private static final int OMITTED_LINE_ALLOWANCE = 64;
+
+    private static final String ELLIPSIS = "\u2026";
+    private static final String CODE_BLOCK = "```";
+    //room kept free for the ellipsis and closing whatever markdown the cut left open
+    private static final int TRUNCATION_ALLOWANCE = ELLIPSIS.length() + 1 + CODE_BLOCK.length() + 1;
+
+    private final int maxLength;
+    private final int maxNotes;
+    private final String footer;
+    private final int issueBudget;
+    private final List<String> notes = new ArrayList<String>();
+    private StringBuilder current;
+    private boolean currentHasIssues = false;
+    private int omitted = 0;
+
+    /**
+     * @param maxLength the maximum number of characters in a note
+     * @param maxNotes the maximum number of notes to create
+     * @param header the text at the start of the first note
+     * @param footer the text at the end of the last note
+     * @param expectedLength a hint of the total length of all issues, used to
+     * size the first note
+     */
+    public NotePaginator(int maxLength, int maxNotes, String header, String footer, int expectedLength) {
+        this.maxLength = maxLength;
+        this.maxNotes = Math.max(1, maxNotes);
+        this.footer = footer;
+        //every note keeps room for the footer, as any of them may turn out to be the last
+        this.issueBudget = Math.max(1, maxLength - footer.length() - OMITTED_LINE_ALLOWANCE);
+        this.current = new StringBuilder(Math.max(0, Math.min(maxLength, header.length() + expectedLength + footer.length())));
+        this.current.append(truncate(header, issueBudget));
+    }
+
+    /**
+     * Adds a rendered issue, starting a new note if it does not fit in the
+     * current one.
+     *
+     * @return false if the issue was left out because the maximum number of
+     * notes has been reached
+     */
+    public boolean add(CharSequence issue) {
+        return add(issue, 1);
+    }
+
+    /**
+     * Adds rendered text showing or summarizing a number of issues, such as
+     * a group of them, starting a new note if it does not fit in the current
+     * one.
+     *
+     * @return false if the text was left out because the maximum number of
+     * notes has been reached
+     */
+    public boolean add(CharSequence issue, int issueCount) {
+        int needed = (currentHasIssues ? ISSUE_SEPARATOR.length() : 0) + issue.length();
+        //a note holding only the header is posted on its own rather than cutting the issue down to nothing
+        if (current.length() > 0 && current.length() + needed > issueBudget) {
+            if (notes.size() + 1 >= maxNotes) {
+                omitted += issueCount;
+                return false;
+            }
+            notes.add(current.toString());
+            //the next note will most likely be about as long as this one
+            current = new StringBuilder(Math.min(maxLength, current.length() + footer.length()));
+            currentHasIssues = false;
+        }
+        if (currentHasIssues) {
+            current.append(ISSUE_SEPARATOR);
+        }
+        //a single issue that can not fit in a note on its own is cut short
+        current.append(truncate(issue, issueBudget - current.length()));
+        currentHasIssues = true;
+        return true;
+    }
+
+    /**
+     * Cuts the text down to the room left, at a line break or space, and
+     * closes any code it leaves open.
+     */
+    static CharSequence truncate(CharSequence text, int room) {
+        if (text.length() <= room) {
+            return text;
+        }
+        if (room < TRUNCATION_ALLOWANCE) {
+            return room >= ELLIPSIS.length() ? ELLIPSIS : "";
+        }
+        int end = room - TRUNCATION_ALLOWANCE;
+        int cut = end;
+        while (cut > 0 && !Character.isWhitespace(text.charAt(cut))) {
+            cut--;
+        }
+        if (cut == 0 && end > 0) {
+            //a single word longer than the room, it has to be split
+            cut = Character.isHighSurrogate(text.charAt(end - 1)) ? end - 1 : end;
+        }
+        while (cut > 0 && Character.isWhitespace(text.charAt(cut - 1))) {
+            cut--;
+        }
+        StringBuilder truncated = new StringBuilder(room);
+        truncated.append(text, 0, cut).append(ELLIPSIS);
+        String kept = truncated.toString();
+        int codeBlocks = count(kept, CODE_BLOCK);
+        if (codeBlocks % 2 == 1) {
+            truncated.append('\n').append(CODE_BLOCK);
+        } else if ((count(kept, "`") - codeBlocks * CODE_BLOCK.length()) % 2 == 1) {
+            truncated.append('`');
+        }
+        return truncated;
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int at = text.indexOf(part); at >= 0; at = text.indexOf(part, at + part.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    public int getOmitted() {
+        return omitted;
+    }
+
+    /**
+     * Ends the last note with the footer and returns all the notes in the
+     * order they should be posted.
+     */
+    public List<String> finish() {
+        if (omitted > 0) {
+            current.append(ISSUE_SEPARATOR).append("*").append(omitted).append(" more new issues are not shown.*  \n");
+        }
+        current.append(footer);
+        notes.add(current.toString());
+        current = null;
+        return notes;
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import hudson.Util;
+import java.io.Serializable;
+import java.util.List;
+import jenkins.plugins.sonarparser.models.SonarReport;
+
+/**
+ * A report waiting to be posted to its merge request. It holds everything
+ * needed to post it, so it can be posted after the build that produced it
+ * has moved on.
+ * <p>
+ * Rendering a report asks Gitlab for the changes of the merge request, so
+ * when reports are published in the background the build only hands over
+ * the issues it found and the publisher renders them.
+ * <p>
+ * A job may post several reports to the same merge request, one for each
+ * configuration of a matrix job or each parallel branch of a pipeline. Each
+ * is told apart by its job name, which includes the matrix axes, and the
+ * sonar results it was made from.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class PendingReport implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String projectPath;
+    private final int mergeRequestId;
+    private final String sourceSha;
+    private final String jobName;
+    private final String reportName;
+    private final int buildNumber;
+    private final List<String> notes;
+    private final List<InlineCommentPublisher.Comment> inlineComments;
+    private final CommitStatus commitStatus;
+    private final long[] baseline;
+    //what is needed to render the report, only set until it is rendered
+    private final GitlabSonarReporter reporter;
+    private final SonarReport found;
+    private final String buildUrl;
+    //the issues the report was rendered from, not kept in the outbox
+    private final transient SonarReport posted;
+
+    /**
+     * A report that is yet to be rendered.
+     *
+     * @param sourceSha the source branch commit that was built, or null if
+     * it is not known
+     * @param found the issues found by the build
+     */
+    public PendingReport(String projectPath, int mergeRequestId, String sourceSha, String jobName, String reportName, int buildNumber, GitlabSonarReporter reporter, SonarReport found, String buildUrl) {
+        this.projectPath = projectPath;
+        this.mergeRequestId = mergeRequestId;
+        this.sourceSha = sourceSha;
+        this.jobName = jobName;
+        this.reportName = reportName;
+        this.buildNumber = buildNumber;
+        this.notes = null;
+        this.inlineComments = null;
+        this.commitStatus = null;
+        this.baseline = null;
+        this.reporter = reporter;
+        this.found = found;
+        this.buildUrl = buildUrl;
+        this.posted = null;
+    }
+
+    /**
+     * A rendered report.
+     *
+     * @param posted the issues the notes and comments were rendered from
+     */
+    public PendingReport(String projectPath, int mergeRequestId, String sourceSha, String jobName, String reportName, int buildNumber, List<String> notes, List<InlineCommentPublisher.Comment> inlineComments, CommitStatus commitStatus, long[] baseline, SonarReport posted) {
+        this.projectPath = projectPath;
+        this.mergeRequestId = mergeRequestId;
+        this.sourceSha = sourceSha;
+        this.jobName = jobName;
+        this.reportName = reportName;
+        this.buildNumber = buildNumber;
+        this.notes = notes;
+        this.inlineComments = inlineComments;
+        this.commitStatus = commitStatus;
+        this.baseline = baseline;
+        this.reporter = null;
+        this.found = null;
+        this.buildUrl = null;
+        this.posted = posted;
+    }
+
+    public String getProjectPath() {
+        return projectPath;
+    }
+
+    public int getMergeRequestId() {
+        return mergeRequestId;
+    }
+
+    public String getSourceSha() {
+        return sourceSha;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    /**
+     * Which of the job's reports this is, such as the sonar results it was
+     * made from.
+     */
+    public String getReportName() {
+        return reportName;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public boolean isRendered() {
+        return reporter == null;
+    }
+
+    /**
+     * Renders the notes, diff comments and commit status of the report.
+     *
+     * @return the rendered report, or this one if it already is
+     */
+    public PendingReport render() {
+        return isRendered() ? this : reporter.render(this);
+    }
+
+    /**
+     * The issues found by the build, or null once the report is rendered.
+     */
+    public SonarReport getFound() {
+        return found;
+    }
+
+    /**
+     * The build the report links to, or null once the report is rendered.
+     */
+    public String getBuildUrl() {
+        return buildUrl;
+    }
+
+    /**
+     * The issues the notes and comments were rendered from, or null if the
+     * report is not rendered yet or was read back from the outbox.
+     */
+    public SonarReport getPosted() {
+        return posted;
+    }
+
+    public List<String> getNotes() {
+        return notes;
+    }
+
+    public List<InlineCommentPublisher.Comment> getInlineComments() {
+        return inlineComments;
+    }
+
+    /**
+     * The status to set on the source commit, or null if none is set.
+     */
+    public CommitStatus getCommitStatus() {
+        return commitStatus;
+    }
+
+    /**
+     * The fingerprints to save as the baseline once the report is posted, or
+     * null if the report is not incremental.
+     */
+    public long[] getBaseline() {
+        return baseline;
+    }
+
+    /**
+     * Identifies the merge request the report is for and which report of
+     * which job it is. A report from a later build with the same key replaces
+     * this one.
+     */
+    public String getReportKey() {
+        return reportKey(projectPath, mergeRequestId, jobName, reportName);
+    }
+
+    public static String reportKey(String projectPath, int mergeRequestId, String jobName, String reportName) {
+        return projectPath + "!" + mergeRequestId + "#" + jobName + "#" + reportName;
+    }
+
+    /**
+     * A short id for the job and report, which tells the notes of this
+     * report apart from those of other jobs on the same merge request. An
+     * incremental report only holds what changed since the last one, so each
+     * build posts its own notes rather than replacing the earlier ones.
+     */
+    public String getReportId() {
+        String id = jobName + "#" + reportName;
+        if (baseline != null) {
+            id += "#" + buildNumber;
+        }
+        return Util.getDigestOf(id).substring(0, 8);
+    }
+
+    @Override
+    public String toString() {
+        return "PendingReport{" + "projectPath=" + projectPath + ", mergeRequestId=" + mergeRequestId + ", jobName=" + jobName + ", reportName=" + reportName + ", buildNumber=" + buildNumber + '}';
+    }
+
+}
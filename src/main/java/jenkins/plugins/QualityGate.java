@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import java.util.EnumMap;
+import java.util.Map;
+import jenkins.plugins.sonarparser.models.SonarReport;
+import jenkins.plugins.sonarparser.models.SonarSeverity;
+
+/**
+ * The most new issues of each severity a merge request may add. Severities
+ * without a threshold are not limited.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public final class QualityGate {
+
+    private final Map<SonarSeverity, Integer> thresholds;
+
+    private QualityGate(Map<SonarSeverity, Integer> thresholds) {
+        this.thresholds = thresholds;
+    }
+
+    /**
+     * Reads thresholds such as <code>BLOCKER=0, CRITICAL=0, MAJOR=10</code>.
+     *
+     * @throws IllegalArgumentException if a threshold can not be read
+     */
+    public static QualityGate parse(String thresholds) {
+        Map<SonarSeverity, Integer> parsed = new EnumMap<SonarSeverity, Integer>(SonarSeverity.class);
+        if (thresholds != null) {
+            for (String threshold : thresholds.split("[,\\s]+")) {
+                if (threshold.length() == 0) {
+                    continue;
+                }
+                int equals = threshold.indexOf('=');
+                SonarSeverity severity = equals > 0 ? SonarSeverity.of(threshold.substring(0, equals)) : null;
+                if (severity == null) {
+                    throw new IllegalArgumentException("Expected a severity and a number, such as MAJOR=10, but found " + threshold);
+                }
+                int maximum;
+                try {
+                    maximum = Integer.parseInt(threshold.substring(equals + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Expected a number of issues for " + severity + " but found " + threshold.substring(equals + 1));
+                }
+                if (maximum < 0) {
+                    throw new IllegalArgumentException("The number of issues for " + severity + " can not be negative");
+                }
+                parsed.put(severity, maximum);
+            }
+        }
+        return new QualityGate(parsed);
+    }
+
+    /**
+     * Checks the new issue counts of the report against the thresholds.
+     *
+     * @param targetUrl the page with the full results, or null
+     */
+    public CommitStatus evaluate(SonarReport report, String targetUrl) {
+        StringBuilder exceeded = new StringBuilder();
+        for (Map.Entry<SonarSeverity, Integer> threshold : thresholds.entrySet()) {
+            int count = report.getNewIssueCount(threshold.getKey().name());
+            if (count > threshold.getValue()) {
+                exceeded.append(exceeded.length() == 0 ? "" : ", ")
+                        .append(count).append(' ').append(threshold.getKey())
+                        .append(" (at most ").append(threshold.getValue()).append(')');
+            }
+        }
+        if (exceeded.length() == 0) {
+            return new CommitStatus(CommitStatus.SUCCESS, report.getNewIssueCount() + " new issues, within the thresholds", targetUrl);
+        }
+        return new CommitStatus(CommitStatus.FAILED, "Too many new issues: " + exceeded, targetUrl);
+    }
+
+}
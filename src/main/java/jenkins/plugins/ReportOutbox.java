@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+
+/**
+ * Keeps every report on disk under JENKINS_HOME until it has been posted, so
+ * reports survive a restart of Jenkins and a Gitlab outage. Reports that
+ * could not be posted are tried again later, waiting twice as long after
+ * each failed attempt. A report Gitlab will never take, such as one for a
+ * deleted merge request or one the Jenkins user can no longer see, is
+ * dropped after the first attempt. A report is stored under a name made
+ * from its project, merge request, job, sonar results and build, so the same
+ * report is never queued twice.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public final class ReportOutbox {
+
+    private static final Logger LOGGER = Logger.getLogger(ReportOutbox.class.getName());
+
+    static final String DIRECTORY = "gitlab-sonar-reporter-outbox";
+
+    private static final long FIRST_RETRY_DELAY = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_RETRY_DELAY = TimeUnit.HOURS.toMillis(1);
+    //about a day of attempts once the delay reaches its maximum
+    private static final int MAX_ATTEMPTS = 30;
+
+    private static final ScheduledExecutorService RETRIES = Executors.newSingleThreadScheduledExecutor(new ReportPublisher.WorkerThreadFactory("Gitlab Sonar Reporter outbox"));
+
+    private ReportOutbox() {
+    }
+
+    /**
+     * Writes the report to the outbox, replacing any copy already there.
+     */
+    public static void add(PendingReport report) throws IOException {
+        write(new Entry(report, 0));
+    }
+
+    /**
+     * Removes a report that has been posted.
+     */
+    public static void remove(PendingReport report) {
+        XmlFile file = fileFor(report);
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Schedules another attempt to post the report, or drops it when it has
+     * failed too many times.
+     *
+     * @param attempts the number of attempts made so far
+     */
+    public static void retryLater(PendingReport report, int attempts) {
+        if (attempts >= MAX_ATTEMPTS) {
+            LOGGER.log(Level.SEVERE, "Giving up on {0} after {1} attempts", new Object[]{report, attempts});
+            remove(report);
+            return;
+        }
+        Entry entry = new Entry(report, attempts);
+        try {
+            write(entry);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not update " + report + " in the outbox", e);
+        }
+        long delay = retryDelay(attempts);
+        LOGGER.log(Level.INFO, "Will try to post {0} again in {1} seconds", new Object[]{report, TimeUnit.MILLISECONDS.toSeconds(delay)});
+        schedule(entry, delay);
+    }
+
+    static long retryDelay(int attempts) {
+        long delay = FIRST_RETRY_DELAY;
+        for (int i = 1; i < attempts && delay < MAX_RETRY_DELAY; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, MAX_RETRY_DELAY);
+    }
+
+    /**
+     * Picks up the reports left in the outbox when Jenkins last stopped.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void resume() {
+        File directory = directory();
+        File[] files = directory != null ? directory.listFiles() : null;
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(".xml")) {
+                continue;
+            }
+            try {
+                Entry entry = (Entry) new XmlFile(file).read();
+                LOGGER.log(Level.INFO, "Found {0} in the outbox", entry.report);
+                schedule(entry, 0);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not read " + file + " from the outbox", e);
+            } catch (ClassCastException e) {
+                LOGGER.log(Level.WARNING, "Unexpected content in " + file + " in the outbox", e);
+            }
+        }
+    }
+
+    private static void schedule(final Entry entry, long delay) {
+        RETRIES.schedule(new Runnable() {
+            public void run() {
+                try {
+                    ReportPublisher.attempt(entry.report, entry.attempts);
+                } catch (InterruptedException e) {
+                    LOGGER.log(Level.WARNING, "Interrupted while posting " + entry.report, e);
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void write(Entry entry) throws IOException {
+        XmlFile file = fileFor(entry.report);
+        if (file == null) {
+            return;
+        }
+        File directory = file.getFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the outbox directory " + directory);
+        }
+        file.write(entry);
+    }
+
+    private static File directory() {
+        Jenkins jenkins = Jenkins.getInstance();
+        return jenkins != null ? new File(jenkins.getRootDir(), DIRECTORY) : null;
+    }
+
+    private static XmlFile fileFor(PendingReport report) {
+        File directory = directory();
+        if (directory == null) {
+            return null;
+        }
+        String key = report.getReportKey() + "#" + report.getBuildNumber();
+        return new XmlFile(new File(directory, Util.getDigestOf(key) + ".xml"));
+    }
+
+    /**
+     * What is written to disk for each report.
+     */
+    private static final class Entry {
+
+        private final PendingReport report;
+        private final int attempts;
+
+        private Entry(PendingReport report, int attempts) {
+            this.report = report;
+            this.attempts = attempts;
+        }
+    }
+
+}
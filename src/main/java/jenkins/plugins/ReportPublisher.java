@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.plugins.gitlab.ExpiringCache;
+import jenkins.plugins.gitlab.Gitlab;
+import jenkins.plugins.gitlab.KeyedLocks;
+import jenkins.plugins.gitlab.MergeRequestNotes;
+import org.gitlab.api.models.GitlabMergeRequest;
+
+/**
+ * Posts rendered reports to Gitlab. Reports are either posted right away on
+ * the build's own thread, or handed to a small pool of workers shared by the
+ * whole plugin so the build can finish without waiting on Gitlab. The
+ * workers take reports from a bounded queue. When it is full the build posts
+ * its own report, which slows builds down instead of queueing without limit.
+ * <p>
+ * Only the newest report of a job for a merge request is worth posting. A
+ * report that is still waiting when one from a later build of the same job
+ * arrives is dropped, and a report from an earlier build than one already
+ * posted is never posted. Reports of other jobs, matrix configurations or
+ * sonar results for the same merge request are posted alongside.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public final class ReportPublisher {
+
+    private static final Logger LOGGER = Logger.getLogger(ReportPublisher.class.getName());
+
+    private static ThreadPoolExecutor EXECUTOR;
+    private static int QUEUE_SIZE;
+
+    /**
+     * The report waiting to be posted under each report key. A worker is
+     * only queued when there was none, and takes whichever report is here
+     * when it runs.
+     */
+    private static final Map<String, PendingReport> WAITING = new HashMap<String, PendingReport>();
+
+    /**
+     * The build number of the newest report posted under each report key.
+     */
+    private static final ExpiringCache<String, Integer> POSTED = new ExpiringCache<String, Integer>(1000, TimeUnit.DAYS.toMillis(1));
+
+    //reports with the same key are posted one at a time, others never wait on them
+    private static final KeyedLocks POSTING_LOCKS = new KeyedLocks();
+
+    private ReportPublisher() {
+    }
+
+    /**
+     * Posts the report, in the background if asynchronous publishing is
+     * enabled. The report is written to the outbox first and stays there
+     * until it has been posted.
+     */
+    public static void publish(final PendingReport report) throws InterruptedException {
+        try {
+            ReportOutbox.add(report);
+        } catch (IOException e) {
+            //still worth trying to post it, it just will not survive a restart
+            LOGGER.log(Level.WARNING, "Could not write " + report + " to the outbox", e);
+        }
+        GitlabSonarReporter.DescriptorImpl descriptor = GitlabSonarReporter.DESCRIPTOR;
+        if (!descriptor.isAsyncPublishing()) {
+            attempt(report, 0);
+            return;
+        }
+        final String key = report.getReportKey();
+        synchronized (WAITING) {
+            PendingReport waiting = WAITING.get(key);
+            if (waiting != null) {
+                PendingReport superseded = waiting.getBuildNumber() > report.getBuildNumber() ? report : waiting;
+                WAITING.put(key, superseded == report ? waiting : report);
+                LOGGER.log(Level.INFO, "Dropping {0}, a report from a later build is waiting", superseded);
+                ReportOutbox.remove(superseded);
+                return;
+            }
+            WAITING.put(key, report);
+        }
+        executor(descriptor.getPublisherThreads(), descriptor.getPublisherQueueSize()).execute(new Runnable() {
+            public void run() {
+                PendingReport newest;
+                synchronized (WAITING) {
+                    newest = WAITING.remove(key);
+                }
+                if (newest == null) {
+                    return;
+                }
+                try {
+                    attempt(newest, 0);
+                } catch (InterruptedException e) {
+                    LOGGER.log(Level.WARNING, "Interrupted while posting " + newest, e);
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        LOGGER.log(Level.INFO, "Queued {0}, {1} report(s) waiting to be posted", new Object[]{report, getQueueDepth()});
+    }
+
+    /**
+     * Tries to post a report from the outbox, removing it when it has been
+     * posted and scheduling another attempt when it has not.
+     *
+     * @param attempts the number of attempts already made
+     */
+    static void attempt(PendingReport report, int attempts) throws InterruptedException {
+        String key = report.getReportKey();
+        POSTING_LOCKS.lock(key);
+        try {
+            Integer posted = POSTED.get(key);
+            if (posted != null && posted > report.getBuildNumber()) {
+                LOGGER.log(Level.INFO, "Dropping {0}, a report from a later build has already been posted", report);
+                ReportOutbox.remove(report);
+                return;
+            }
+            boolean delivered = false;
+            try {
+                delivered = deliver(report);
+            } catch (IOException e) {
+                if (Gitlab.isPermanent(e)) {
+                    LOGGER.log(Level.SEVERE, "Dropping " + report + ", it can not be posted", e);
+                    ReportOutbox.remove(report);
+                    return;
+                }
+                LOGGER.log(Level.SEVERE, "Failed to post " + report, e);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Failed to post " + report, e);
+            }
+            if (delivered) {
+                POSTED.put(key, report.getBuildNumber());
+                ReportOutbox.remove(report);
+            } else {
+                ReportOutbox.retryLater(report, attempts + 1);
+            }
+        } finally {
+            POSTING_LOCKS.unlock(key);
+        }
+    }
+
+    /**
+     * Posts the report on the calling thread, rendering it first if the
+     * build left that to the publisher.
+     *
+     * @return true if the notes were posted
+     * @throws FileNotFoundException if the merge request no longer exists
+     */
+    public static boolean deliver(PendingReport report) throws IOException, InterruptedException {
+        //the outbox keeps the report as the build left it, so a failed attempt renders it again
+        report = report.render();
+        GitlabMergeRequest mergeRequest = Gitlab.getMergeRequest(report.getProjectPath(), report.getMergeRequestId(), report.getSourceSha());
+        if (mergeRequest == null) {
+            throw new FileNotFoundException("Could not find merge request " + report.getMergeRequestId() + " of project " + report.getProjectPath());
+        }
+        boolean finished = "merged".equals(mergeRequest.getState()) || "closed".equals(mergeRequest.getState());
+        if (finished) {
+            //it will not be built again, so there is nothing to compare a later build to
+            IssueBaselines.evict(report.getProjectPath(), report.getMergeRequestId());
+        }
+        GitlabSonarReporter.DescriptorImpl descriptor = GitlabSonarReporter.DESCRIPTOR;
+        LOGGER.log(Level.INFO, "Posting {0} note(s) on Gitlab.", report.getNotes().size());
+        //earlier notes from this reporter are updated rather than posted again
+        if (!report.getNotes().isEmpty()) {
+            MergeRequestNotes.post(mergeRequest, descriptor.getBotUsername(), report.getReportId(), report.getNotes());
+        }
+        //the notes are already posted, so a status that can not be set is not worth posting them again for
+        CommitStatus commitStatus = report.getCommitStatus();
+        if (commitStatus != null && !Gitlab.createCommitStatus(mergeRequest, report.getSourceSha(), commitStatus.getState(), CommitStatus.NAME, commitStatus.getDescription(), commitStatus.getTargetUrl())) {
+            LOGGER.log(Level.WARNING, "The commit status could not be set on {0}", report.getSourceSha());
+        }
+        //diff comments can not be updated, so they are only posted once the notes have been,
+        //and those already created for this report on the commit are not created again
+        if (!report.getInlineComments().isEmpty()) {
+            LOGGER.log(Level.INFO, "Commenting on the diff for {0} line(s).", report.getInlineComments().size());
+            int failed = InlineCommentPublisher.publish(mergeRequest, report.getSourceSha(), report.getReportKey(), report.getInlineComments(),
+                    descriptor.getInlineConcurrency(), descriptor.getInlineRequestsPerSecond());
+            if (failed > 0) {
+                LOGGER.log(Level.WARNING, "{0} comments could not be created on the diff", failed);
+            }
+        }
+        if (!finished) {
+            //only now are the issues of this report on the merge request
+            IssueBaselines.save(report);
+        }
+        return true;
+    }
+
+    /**
+     * The number of reports queued and not yet being posted.
+     */
+    public static int getQueueDepth() {
+        synchronized (WAITING) {
+            return WAITING.size();
+        }
+    }
+
+    /**
+     * Returns the worker pool, adjusting it to the configured size. A pool
+     * with a different queue size is replaced, and the old one is left to
+     * finish the reports it already has.
+     */
+    private static synchronized ThreadPoolExecutor executor(int threads, int queueSize) {
+        if (EXECUTOR != null && QUEUE_SIZE != queueSize) {
+            EXECUTOR.shutdown();
+            EXECUTOR = null;
+        }
+        if (EXECUTOR == null) {
+            EXECUTOR = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueSize), new WorkerThreadFactory("Gitlab Sonar Reporter publisher"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            EXECUTOR.allowCoreThreadTimeOut(true);
+            QUEUE_SIZE = queueSize;
+        } else if (EXECUTOR.getMaximumPoolSize() != threads) {
+            if (threads > EXECUTOR.getMaximumPoolSize()) {
+                EXECUTOR.setMaximumPoolSize(threads);
+                EXECUTOR.setCorePoolSize(threads);
+            } else {
+                EXECUTOR.setCorePoolSize(threads);
+                EXECUTOR.setMaximumPoolSize(threads);
+            }
+        }
+        return EXECUTOR;
+    }
+
+    static final class WorkerThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        WorkerThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + " #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.plugins.sonarparser.IssueFilter;
+import jenkins.plugins.sonarparser.SonarReportParser;
+import jenkins.plugins.sonarparser.models.SonarReport;
+
+/**
+ * Parses the sonar reports where they live, normally the build agent, and
+ * only sends the new issues back to the master. The reports are found with
+ * an Ant style pattern relative to the workspace, parsed in parallel, and
+ * merged into one report. A path without wildcards names a single report,
+ * and may be absolute, as may a pattern. Issues the filter rejects are dropped while
+ * parsing, so they never reach the master.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class SonarReportCallable extends MasterToSlaveFileCallable<SonarReport> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String includes;
+    private final IssueFilter filter;
+
+    /**
+     * @param includes the Ant style pattern of the report files, relative to
+     * the workspace unless it is absolute
+     * @param filter decides which of the new issues are kept
+     */
+    public SonarReportCallable(String includes, IssueFilter filter) {
+        this.includes = includes;
+        this.filter = filter;
+    }
+
+    public SonarReport invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+        File base = workspace;
+        String pattern = includes.trim();
+        int wildcard = firstWildcard(pattern);
+        boolean absolute = new File(pattern).isAbsolute();
+        if (wildcard < 0) {
+            //the fileset would treat an absolute path as relative to the workspace
+            File file = absolute ? new File(pattern) : new File(workspace, pattern);
+            if (!file.isFile()) {
+                throw new FileNotFoundException("No sonar report at " + file);
+            }
+            return parse(file, filter);
+        }
+        if (absolute) {
+            //scan from the last directory before the first wildcard
+            int separator = Math.max(pattern.lastIndexOf('/', wildcard), pattern.lastIndexOf('\\', wildcard));
+            base = new File(pattern.substring(0, separator + 1));
+            pattern = pattern.substring(separator + 1);
+        }
+        String[] paths = Util.createFileSet(base, pattern).getDirectoryScanner().getIncludedFiles();
+        if (paths.length == 0) {
+            throw new FileNotFoundException("No sonar report matches " + pattern + " in " + base);
+        }
+        if (paths.length == 1) {
+            return parse(new File(base, paths[0]), filter);
+        }
+        List<Callable<SonarReport>> parsers = new ArrayList<Callable<SonarReport>>(paths.length);
+        for (String path : paths) {
+            final File file = new File(base, path);
+            parsers.add(new Callable<SonarReport>() {
+                public SonarReport call() throws IOException {
+                    return parse(file, filter);
+                }
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(paths.length, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<SonarReport> reports = new ArrayList<SonarReport>(paths.length);
+            for (Future<SonarReport> report : executor.invokeAll(parsers)) {
+                try {
+                    reports.add(report.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+            return SonarReportParser.merge(reports);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The index of the first wildcard, or of the first comma separating
+     * patterns, or -1 if the path has neither.
+     */
+    private static int firstWildcard(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '*' || c == '?' || c == ',') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static SonarReport parse(File file, IssueFilter filter) throws IOException {
+        InputStream resultsStream = null;
+        try {
+            resultsStream = new FileInputStream(file);
+            return SonarReportParser.parseNewIssues(resultsStream, filter);
+        } finally {
+            if(resultsStream != null){
+                resultsStream.close();
+            }
+        }
+    }
+
+}
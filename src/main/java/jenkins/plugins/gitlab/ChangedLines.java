@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.gitlab;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lines added or changed by a merge request, read from the unified diffs
+ * Gitlab returns for its changes. Each file keeps its changed lines as
+ * sorted, non overlapping ranges, so finding a line is a binary search.
+ * <p>
+ * Sonar names files relative to the module they are in, which may be below
+ * the root of the repository, so a file is found by the end of its path.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public final class ChangedLines {
+
+    //files indexed by their name, as that is the part every way of naming them shares
+    private final Map<String, List<ChangedFile>> filesByName = new HashMap<String, List<ChangedFile>>();
+
+    private ChangedLines() {
+    }
+
+    /**
+     * Reads the changes of a merge request, as returned by Gitlab.
+     *
+     * @param changes the <code>changes</code> of the merge request, each with
+     * a <code>new_path</code> and a <code>diff</code>
+     */
+    public static ChangedLines parse(List<?> changes) {
+        ChangedLines changedLines = new ChangedLines();
+        if (changes == null) {
+            return changedLines;
+        }
+        for (Object change : changes) {
+            if (!(change instanceof Map)) {
+                continue;
+            }
+            Map<?, ?> file = (Map<?, ?>) change;
+            Object path = file.get("new_path");
+            Object diff = file.get("diff");
+            if (path == null || Boolean.TRUE.equals(file.get("deleted_file"))) {
+                continue;
+            }
+            changedLines.add(new ChangedFile(path.toString(), diff != null ? diff.toString() : ""));
+        }
+        return changedLines;
+    }
+
+    private void add(ChangedFile file) {
+        String name = nameOf(file.path);
+        List<ChangedFile> files = filesByName.get(name);
+        if (files == null) {
+            files = new ArrayList<ChangedFile>(1);
+            filesByName.put(name, files);
+        }
+        files.add(file);
+    }
+
+    /**
+     * @param path the path of the file, relative to the repository or to a
+     * directory in it
+     * @return true if the merge request changed the file at all
+     */
+    public boolean containsFile(String path) {
+        return find(path) != null;
+    }
+
+    /**
+     * @param path the path of the file, relative to the repository or to a
+     * directory in it, such as the directory of a module
+     * @return the path of the file relative to the repository, or null if
+     * the merge request did not change it
+     */
+    public String repositoryPathOf(String path) {
+        ChangedFile file = find(path);
+        return file != null ? file.path : null;
+    }
+
+    /**
+     * @param path the path of the file, relative to the repository or to a
+     * directory in it
+     * @param line the line in the new version of the file
+     * @return true if the merge request added or changed the line
+     */
+    public boolean contains(String path, int line) {
+        ChangedFile file = find(path);
+        return file != null && file.contains(line);
+    }
+
+    private ChangedFile find(String path) {
+        if (path == null) {
+            return null;
+        }
+        String normalized = path.replace('\\', '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        List<ChangedFile> files = filesByName.get(nameOf(normalized));
+        if (files == null) {
+            return null;
+        }
+        for (ChangedFile file : files) {
+            if (file.path.equals(normalized) || file.path.endsWith("/" + normalized)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private static String nameOf(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static final class ChangedFile {
+
+        private final String path;
+        //the first and last line of each range, one after the other
+        private final int[] ranges;
+
+        private ChangedFile(String path, String diff) {
+            this.path = path;
+            this.ranges = parseRanges(diff);
+        }
+
+        private boolean contains(int line) {
+            //the index of the range end at or after the line, if the line is in a range
+            int index = Arrays.binarySearch(ranges, line);
+            if (index >= 0) {
+                return true;
+            }
+            int insertion = -index - 1;
+            //between a start and its end
+            return insertion % 2 == 1;
+        }
+
+        /**
+         * Collects the runs of added lines from the hunks of a unified diff.
+         * A changed line shows up as removed and added, so it is counted too.
+         */
+        private static int[] parseRanges(String diff) {
+            int[] ranges = new int[16];
+            int count = 0;
+            int newLine = 0;
+            int rangeStart = -1;
+            int start = 0;
+            while (start < diff.length()) {
+                int end = diff.indexOf('\n', start);
+                if (end < 0) {
+                    end = diff.length();
+                }
+                char first = end > start ? diff.charAt(start) : ' ';
+                if (newLine > 0 && first == '+') {
+                    if (rangeStart < 0) {
+                        rangeStart = newLine;
+                    }
+                    newLine++;
+                } else {
+                    if (rangeStart >= 0) {
+                        //any other line ends the run of added lines
+                        if (count + 2 > ranges.length) {
+                            ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                        }
+                        ranges[count++] = rangeStart;
+                        ranges[count++] = newLine - 1;
+                        rangeStart = -1;
+                    }
+                    if (first == '@' && diff.startsWith("@@", start)) {
+                        newLine = hunkStart(diff, start, end);
+                    } else if (newLine > 0 && first != '-' && first != '\\') {
+                        //a line both versions share
+                        newLine++;
+                    }
+                }
+                start = end + 1;
+            }
+            if (rangeStart >= 0) {
+                ranges = Arrays.copyOf(ranges, count + 2);
+                ranges[count++] = rangeStart;
+                ranges[count++] = newLine - 1;
+            }
+            return Arrays.copyOf(ranges, count);
+        }
+
+        /**
+         * Reads the first line of the new file from a hunk header such as
+         * <code>@@ -10,7 +12,9 @@</code>.
+         */
+        private static int hunkStart(String diff, int start, int end) {
+            int plus = diff.indexOf('+', start);
+            if (plus < 0 || plus >= end) {
+                return 0;
+            }
+            int line = 0;
+            for (int i = plus + 1; i < end && Character.isDigit(diff.charAt(i)); i++) {
+                line = line * 10 + (diff.charAt(i) - '0');
+            }
+            return line;
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.gitlab;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stops requests to Gitlab for a while after several of them have failed in
+ * a row, so that when Gitlab is struggling the builds do not all keep
+ * hammering it. Once the wait is over a single request is let through, and
+ * its result decides whether requests flow again or the wait starts over.
+ * If that trial request never reports back, another one is let through
+ * after the same wait, so the breaker can not stay half open.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    public enum State {
+
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openedAt = 0;
+    private long trialStartedAt = 0;
+
+    /**
+     * @param failureThreshold the number of failures in a row that opens the
+     * breaker
+     * @param openMillis how long the breaker stays open before letting a
+     * request through to try
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Whether a request may be made now.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt >= openMillis) {
+                    state = State.HALF_OPEN;
+                    trialStartedAt = System.currentTimeMillis();
+                    return true;
+                }
+                return false;
+            default:
+                //a trial request is already on its way, unless it was lost
+                if (System.currentTimeMillis() - trialStartedAt >= openMillis) {
+                    LOGGER.log(Level.WARNING, "The trial request to Gitlab never finished, trying another one");
+                    trialStartedAt = System.currentTimeMillis();
+                    return true;
+                }
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.log(Level.INFO, "Gitlab is answering again, closing the circuit breaker");
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            LOGGER.log(Level.WARNING, "Gitlab failed {0} time(s) in a row, holding back requests for {1} ms", new Object[]{failures, openMillis});
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Closes the breaker and forgets the failures, for when the
+     * configuration changes.
+     */
+    public synchronized void reset() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+}
@@ -21,12 +21,19 @@
  */
 package jenkins.plugins.gitlab;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.plugins.GitlabSonarReporter;
-import org.gitlab.api.GitlabAPI;
 import org.gitlab.api.models.GitlabMergeRequest;
 import org.gitlab.api.models.GitlabNote;
 import org.gitlab.api.models.GitlabProject;
@@ -39,26 +46,231 @@ public class Gitlab {
 
     private static final Logger LOGGER = Logger.getLogger(Gitlab.class.getName());
 
-    private static GitlabAPI API;
+    /**
+     * The client for the current configuration. It is created once, safely
+     * published to all builds, and replaced when the configuration is saved.
+     */
+    private static volatile GitlabClient CLIENT;
 
-    public static GitlabAPI get() {
-        if (API == null) {
-            String privateToken = GitlabSonarReporter.DESCRIPTOR.getBotApiToken();
-            String apiUrl = GitlabSonarReporter.DESCRIPTOR.getGitlabHostUrl();
-            API = GitlabAPI.connect(apiUrl, privateToken);
+    private static final int PROJECT_CACHE_SIZE = 500;
+    private static final long PROJECT_CACHE_TTL = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Projects indexed by their path with namespace, so a build only has to
+     * ask Gitlab for the one project it needs, and usually not even that.
+     */
+    private static final ExpiringCache<String, GitlabProject> PROJECTS = new ExpiringCache<String, GitlabProject>(PROJECT_CACHE_SIZE, PROJECT_CACHE_TTL);
+
+    private static final int MERGE_REQUEST_CACHE_SIZE = 200;
+    private static final long MERGE_REQUEST_CACHE_TTL = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Merge requests keyed by project path and merge request id, remembered
+     * together with the source commit they were fetched for and their ETag.
+     */
+    private static final ExpiringCache<String, CachedMergeRequest> MERGE_REQUESTS = new ExpiringCache<String, CachedMergeRequest>(MERGE_REQUEST_CACHE_SIZE, MERGE_REQUEST_CACHE_TTL);
+
+    //merge requests used without asking Gitlab, those Gitlab said had not changed, and those fetched
+    private static final AtomicLong MERGE_REQUEST_HITS = new AtomicLong();
+    private static final AtomicLong MERGE_REQUEST_NOT_MODIFIED = new AtomicLong();
+    private static final AtomicLong MERGE_REQUEST_MISSES = new AtomicLong();
+
+    private static final int CHANGES_CACHE_SIZE = 100;
+    private static final long CHANGES_CACHE_TTL = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The lines changed by a merge request, keyed by project path, merge
+     * request id and source commit, so rebuilds of the same commit do not
+     * fetch the diff again.
+     */
+    private static final ExpiringCache<String, ChangedLines> CHANGES = new ExpiringCache<String, ChangedLines>(CHANGES_CACHE_SIZE, CHANGES_CACHE_TTL);
+
+    private static final int BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Shared by every request, so builds stop calling Gitlab together when it
+     * is failing.
+     */
+    private static final CircuitBreaker BREAKER = new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MILLIS);
+
+    private static final long FIRST_RETRY_DELAY = 500;
+
+    //as many as Gitlab hands out in one page
+    private static final int NOTES_PER_PAGE = 100;
+
+    /**
+     * Shared by every request, so all the builds together stay within the
+     * rate Gitlab allows the bot user.
+     */
+    private static final RateLimiter RATE_LIMITER = new RateLimiter(GitlabSonarReporter.DescriptorImpl.DEFAULT_REQUESTS_PER_SECOND);
+
+    //Gitlab counts requests per minute, so when it does not say how long to wait it is best to sit the minute out
+    private static final long RATE_LIMITED_PAUSE = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * A single request to Gitlab.
+     */
+    private interface Request<T> {
+
+        T execute(GitlabClient client) throws IOException;
+    }
+
+    public static GitlabClient get() {
+        GitlabClient client = CLIENT;
+        if (client == null) {
+            synchronized (Gitlab.class) {
+                client = CLIENT;
+                if (client == null) {
+                    GitlabSonarReporter.DescriptorImpl descriptor = GitlabSonarReporter.DESCRIPTOR;
+                    client = new GitlabClient(descriptor.getGitlabHostUrl(), descriptor.getBotApiToken(),
+                            descriptor.isIgnoreCertificateErrors(), (int) TimeUnit.SECONDS.toMillis(descriptor.getRequestTimeoutSeconds()), RATE_LIMITER);
+                    CLIENT = client;
+                }
+            }
         }
 
-        return API;
+        return client;
     }
 
-    public static GitlabProject getProjectForPath(String path) {
-        try {
-            List<GitlabProject> projects = get().getAllProjects();
-            for (GitlabProject project : projects) {
-                if (project.getPathWithNamespace().equals(path)) {
-                    return project;
+    /**
+     * Drops the client and everything cached with it, so the next request
+     * uses the saved host url, token and timeout. Called when the
+     * configuration is saved.
+     */
+    public static void reset() {
+        synchronized (Gitlab.class) {
+            CLIENT = null;
+            PROJECTS.clear();
+            MERGE_REQUESTS.clear();
+            CHANGES.clear();
+            MergeRequestNotes.clear();
+            //failures against the old configuration say nothing about the new one
+            BREAKER.reset();
+        }
+    }
+
+    public static CircuitBreaker.State getCircuitBreakerState() {
+        return BREAKER.getState();
+    }
+
+    /**
+     * The number of requests that can be made right now without waiting on
+     * the rate limiter.
+     */
+    public static int getRateLimitBudget() {
+        return RATE_LIMITER.getAvailablePermits();
+    }
+
+    /**
+     * Makes the request, retrying server errors and connection problems
+     * after a growing, jittered delay. Nothing is sent while the circuit
+     * breaker is open or Gitlab's rate limit is exceeded, and being rate
+     * limited is not waited out, so a build is never held for as long as
+     * Gitlab asks to wait. The report stays in the outbox and is posted later
+     * instead.
+     *
+     * @param repeatable whether sending the request twice does no harm. A
+     * request that is not, such as one creating a note, is only sent again
+     * when Gitlab's answer shows it did not act on it
+     * @throws GitlabUnavailableException if the circuit breaker is open or
+     * the rate limit is exceeded
+     */
+    private static <T> T call(String description, boolean repeatable, Request<T> request) throws IOException {
+        GitlabSonarReporter.DescriptorImpl descriptor = GitlabSonarReporter.DESCRIPTOR;
+        int maxRetries = descriptor.getMaxRetries();
+        for (int attempt = 0;; attempt++) {
+            //the token is taken before asking the breaker, so nothing can stop a trial request once it is allowed
+            RATE_LIMITER.setRate(descriptor.getRequestsPerSecond());
+            try {
+                if (!RATE_LIMITER.tryAcquire()) {
+                    throw new GitlabUnavailableException("Gitlab rate limit exceeded, not trying to " + description);
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting to " + description);
+            }
+            if (!BREAKER.allowRequest()) {
+                throw new GitlabUnavailableException("Gitlab is unavailable, not trying to " + description);
             }
+            //every way out of here tells the breaker how the request went
+            boolean answered = false;
+            try {
+                T result = request.execute(get());
+                answered = true;
+                return result;
+            } catch (IOException e) {
+                //a status, even an error or being rate limited, means Gitlab is up
+                answered = statusOf(e) > 0 && statusOf(e) < 500;
+                if (statusOf(e) == 429) {
+                    //waiting out the limit here would hold the build, the outbox tries again later instead
+                    long retryAfter = ((GitlabHttpException) e).getRetryAfterMillis();
+                    long pause = retryAfter >= 0 ? retryAfter : RATE_LIMITED_PAUSE;
+                    LOGGER.log(Level.WARNING, "Gitlab rate limit exceeded, holding back requests for {0} ms", pause);
+                    RATE_LIMITER.pause(pause);
+                    throw e;
+                }
+                if (!isRetryable(e, repeatable) || attempt >= maxRetries) {
+                    throw e;
+                }
+                long delay = (FIRST_RETRY_DELAY << attempt) / 2;
+                delay += (long) (Math.random() * delay);
+                LOGGER.log(Level.WARNING, "Failed to {0}, trying again in {1} ms: {2}", new Object[]{description, delay, e.getMessage()});
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            } finally {
+                if (answered) {
+                    BREAKER.recordSuccess();
+                } else {
+                    BREAKER.recordFailure();
+                }
+            }
+        }
+    }
+
+    /**
+     * The HTTP status Gitlab answered with, or -1 if there was no answer.
+     */
+    static int statusOf(IOException e) {
+        return e instanceof GitlabHttpException ? ((GitlabHttpException) e).getStatus() : -1;
+    }
+
+    /**
+     * Whether the request can never succeed, such as when the merge request
+     * was deleted or the Jenkins user lost access to it, so there is no point
+     * in trying it again later.
+     */
+    public static boolean isPermanent(IOException e) {
+        if (e instanceof FileNotFoundException) {
+            return true;
+        }
+        int status = statusOf(e);
+        return status > 0 && status != 408 && status != 429 && status < 500;
+    }
+
+    /**
+     * Whether the request may succeed when sent again. Repeatable requests
+     * are sent again after any server error or failure to get an answer. A
+     * request that is not could already have been acted on when a proxy
+     * answers with a bad gateway or a timeout, or the answer never came, so it
+     * is only sent again when it was rate limited, Gitlab said it was
+     * unavailable, or the connection was never made.
+     */
+    private static boolean isRetryable(IOException e, boolean repeatable) {
+        int status = statusOf(e);
+        if (status > 0) {
+            return status == 429 || status == 503 || (repeatable && status >= 500);
+        }
+        return repeatable || e instanceof ConnectException;
+    }
+
+    public static GitlabProject getProjectForPath(String path) {
+        try {
+            return getProject(path);
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Could not retrieve Project with path: {0} (Have you properly configured the project path?)", path);
         }
@@ -68,32 +280,288 @@ public class Gitlab {
     public static GitlabProject getProject(String projectPath) throws IOException{
         LOGGER.log(Level.FINEST, "Looking for Project Path with Namespace: ''{0}''", projectPath);
         
-        List<GitlabProject> projects = get().getProjects();
-        for (GitlabProject project : projects){
-            LOGGER.log(Level.FINEST, "Project Path with Namespace: ''{0}''", project.getPathWithNamespace());
-            if(project.getPathWithNamespace().equals(projectPath)){
-                return project;
+        GitlabProject project = PROJECTS.get(projectPath);
+        if(project != null){
+            return project;
+        }
+        try {
+            //Gitlab accepts the url encoded path with namespace in place of the id
+            final String tailUrl = GitlabProject.URL + "/" + URLEncoder.encode(projectPath, "UTF-8");
+            project = call("get project " + projectPath, true, new Request<GitlabProject>() {
+                public GitlabProject execute(GitlabClient client) throws IOException {
+                    return client.get(tailUrl, GitlabProject.class);
+                }
+            });
+        } catch (GitlabHttpException e) {
+            if (e.getStatus() != 404) {
+                throw e;
             }
+            LOGGER.log(Level.FINEST, "No Project found with Path with Namespace: ''{0}''", projectPath);
+            return null;
         }
-        return null; 
+        if(project != null){
+            PROJECTS.put(projectPath, project);
+        }
+        return project; 
+    }
+
+    public static long getProjectCacheHits() {
+        return PROJECTS.getHits();
+    }
+
+    public static long getProjectCacheMisses() {
+        return PROJECTS.getMisses();
     }
     
     public static GitlabMergeRequest getMergeRequest(String projectPath, int mergeRequestId) throws IOException {
+        return Gitlab.getMergeRequest(projectPath, mergeRequestId, null);
+    }
+
+    /**
+     * Gets the merge request, reusing the one fetched by an earlier build when
+     * it was fetched for the same source commit. Otherwise, including when
+     * the caller does not know the commit, Gitlab is asked whether the cached
+     * merge request has changed, and only sends it again if it has.
+     */
+    public static GitlabMergeRequest getMergeRequest(String projectPath, int mergeRequestId, String sourceSha) throws IOException {
+        String key = projectPath + "!" + mergeRequestId;
+        CachedMergeRequest cached = MERGE_REQUESTS.get(key);
+        if(cached != null && sourceSha != null && sourceSha.equals(cached.sourceSha)){
+            LOGGER.log(Level.FINEST, "Using cached Merge Request {0}", key);
+            MERGE_REQUEST_HITS.incrementAndGet();
+            return cached.mergeRequest;
+        }
         GitlabProject project = Gitlab.getProject(projectPath);
-        return Gitlab.getMergeRequest(project, mergeRequestId);
+        if(project == null){
+            return null;
+        }
+        GitlabClient.Tagged<GitlabMergeRequest> fetched = getMergeRequest(project, mergeRequestId, cached != null ? cached.etag : null);
+        GitlabMergeRequest mergeRequest;
+        String etag;
+        if(fetched == null && cached != null){
+            LOGGER.log(Level.FINEST, "Merge Request {0} has not changed", key);
+            MERGE_REQUEST_NOT_MODIFIED.incrementAndGet();
+            mergeRequest = cached.mergeRequest;
+            etag = cached.etag;
+        } else {
+            MERGE_REQUEST_MISSES.incrementAndGet();
+            mergeRequest = fetched != null ? fetched.getValue() : null;
+            etag = fetched != null ? fetched.getEtag() : null;
+        }
+        if(mergeRequest != null){
+            //just checked with Gitlab, so it is good for another while
+            MERGE_REQUESTS.put(key, new CachedMergeRequest(mergeRequest, sourceSha, etag));
+        }
+        return mergeRequest;
+    }
+
+    /**
+     * Asks Gitlab for the commit at the head of the merge request's source
+     * branch. The commit checked out by the build is not always it, as the
+     * branch may have been merged into the target branch before building.
+     */
+    public static String getSourceHeadSha(String projectPath, int mergeRequestId) throws IOException {
+        GitlabMergeRequest mergeRequest = Gitlab.getMergeRequest(projectPath, mergeRequestId);
+        if(mergeRequest == null){
+            throw new FileNotFoundException("Merge request " + mergeRequestId + " of " + projectPath + " was not found");
+        }
+        final String tailUrl = GitlabProject.URL + "/" + sourceProjectIdOf(mergeRequest)
+                + "/repository/branches/" + URLEncoder.encode(mergeRequest.getSourceBranch(), "UTF-8");
+        Map branch = call("get branch " + mergeRequest.getSourceBranch(), true, new Request<Map>() {
+            public Map execute(GitlabClient client) throws IOException {
+                return client.get(tailUrl, Map.class);
+            }
+        });
+        Map commit = (Map) branch.get("commit");
+        return commit != null ? (String) commit.get("id") : null;
+    }
+
+    /**
+     * The project the source branch is in, which is a fork for merge
+     * requests from one.
+     */
+    private static Integer sourceProjectIdOf(GitlabMergeRequest mergeRequest) {
+        return mergeRequest.getSourceProjectId() != null ? mergeRequest.getSourceProjectId() : mergeRequest.getProjectId();
+    }
+
+    /**
+     * The number of merge requests used from the cache without asking Gitlab.
+     */
+    public static long getMergeRequestCacheHits() {
+        return MERGE_REQUEST_HITS.get();
+    }
+
+    /**
+     * The number of cached merge requests Gitlab said had not changed.
+     */
+    public static long getMergeRequestCacheNotModified() {
+        return MERGE_REQUEST_NOT_MODIFIED.get();
+    }
+
+    /**
+     * The number of merge requests Gitlab had to send.
+     */
+    public static long getMergeRequestCacheMisses() {
+        return MERGE_REQUEST_MISSES.get();
     }
     
-    public static GitlabMergeRequest getMergeRequest(GitlabProject project, int mergeRequestId) throws IOException {
-        return get().getMergeRequest(project, mergeRequestId);
+    public static GitlabMergeRequest getMergeRequest(final GitlabProject project, final int mergeRequestId) throws IOException {
+        GitlabClient.Tagged<GitlabMergeRequest> fetched = getMergeRequest(project, mergeRequestId, null);
+        return fetched != null ? fetched.getValue() : null;
+    }
+
+    /**
+     * @param etag the ETag of the copy already held, or null
+     * @return the merge request and its ETag, or null if the copy held has
+     * not changed
+     */
+    private static GitlabClient.Tagged<GitlabMergeRequest> getMergeRequest(final GitlabProject project, final int mergeRequestId, final String etag) throws IOException {
+        final String tailUrl = GitlabProject.URL + "/" + project.getId() + "/merge_request/" + mergeRequestId;
+        return call("get merge request " + mergeRequestId, true, new Request<GitlabClient.Tagged<GitlabMergeRequest>>() {
+            public GitlabClient.Tagged<GitlabMergeRequest> execute(GitlabClient client) throws IOException {
+                return client.getIfChanged(tailUrl, GitlabMergeRequest.class, etag);
+            }
+        });
+    }
+
+    /**
+     * Gets the lines the merge request adds or changes. They are only cached
+     * when the source commit is known, as without it there is no telling
+     * whether the merge request has moved on.
+     */
+    public static ChangedLines getChangedLines(String projectPath, int mergeRequestId, String sourceSha) throws IOException {
+        String key = projectPath + "!" + mergeRequestId + "@" + sourceSha;
+        if(sourceSha != null){
+            ChangedLines cached = CHANGES.get(key);
+            if(cached != null){
+                LOGGER.log(Level.FINEST, "Using cached changes of Merge Request {0}", key);
+                return cached;
+            }
+        }
+        GitlabMergeRequest mergeRequest = Gitlab.getMergeRequest(projectPath, mergeRequestId, sourceSha);
+        if(mergeRequest == null){
+            throw new FileNotFoundException("Merge request " + mergeRequestId + " of " + projectPath + " was not found");
+        }
+        final String tailUrl = GitlabProject.URL + "/" + mergeRequest.getProjectId()
+                + "/merge_request/" + mergeRequest.getId() + "/changes";
+        Map changes = call("get changes of merge request " + mergeRequestId, true, new Request<Map>() {
+            public Map execute(GitlabClient client) throws IOException {
+                return client.get(tailUrl, Map.class);
+            }
+        });
+        ChangedLines changedLines = ChangedLines.parse((List<?>) changes.get("changes"));
+        if(sourceSha != null){
+            CHANGES.put(key, changedLines);
+        }
+        return changedLines;
     }
 
-    public static GitlabNote createNote(GitlabMergeRequest mergeRequest, String message) {
+    public static GitlabNote createNote(final GitlabMergeRequest mergeRequest, final String message) throws IOException {
+        final String tailUrl = notesUrl(mergeRequest);
+        return call("create note for merge request " + mergeRequest.getId(), false, new Request<GitlabNote>() {
+            public GitlabNote execute(GitlabClient client) throws IOException {
+                return client.send("POST", tailUrl, GitlabClient.form("body", message), GitlabNote.class);
+            }
+        });
+    }
+
+    public static List<GitlabNote> getNotes(final GitlabMergeRequest mergeRequest) throws IOException {
+        List<GitlabNote> notes = new ArrayList<GitlabNote>();
+        for (int page = 1;; page++) {
+            final String tailUrl = notesUrl(mergeRequest) + "?per_page=" + NOTES_PER_PAGE + "&page=" + page;
+            GitlabNote[] onPage = call("get notes of merge request " + mergeRequest.getId(), true, new Request<GitlabNote[]>() {
+                public GitlabNote[] execute(GitlabClient client) throws IOException {
+                    return client.get(tailUrl, GitlabNote[].class);
+                }
+            });
+            notes.addAll(Arrays.asList(onPage));
+            if (onPage.length < NOTES_PER_PAGE) {
+                return notes;
+            }
+        }
+    }
+
+    private static String notesUrl(GitlabMergeRequest mergeRequest) {
+        return GitlabProject.URL + "/" + mergeRequest.getProjectId() + "/merge_requests/" + mergeRequest.getId() + GitlabNote.URL;
+    }
+
+    /**
+     * Changes the body of a note.
+     *
+     * @return the note, or null if it no longer exists
+     */
+    public static GitlabNote updateNote(GitlabMergeRequest mergeRequest, int noteId, final String message) throws IOException {
+        final String tailUrl = notesUrl(mergeRequest) + "/" + noteId;
         try {
-            return get().createNote(mergeRequest, message);
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Failed to create note for merge request " + mergeRequest.getId(), e);
+            //setting the same body again does no harm
+            return call("update note " + noteId, true, new Request<GitlabNote>() {
+                public GitlabNote execute(GitlabClient client) throws IOException {
+                    return client.send("PUT", tailUrl, GitlabClient.form("body", message), GitlabNote.class);
+                }
+            });
+        } catch (GitlabHttpException e) {
+            if (e.getStatus() != 404) {
+                throw e;
+            }
             return null;
         }
     }
 
+    /**
+     * Comments on a line of a commit, which Gitlab shows in the merge request
+     * diff when the commit is the merge request head.
+     *
+     * @return true if the comment was created
+     */
+    public static boolean createCommitComment(GitlabMergeRequest mergeRequest, String sha, final String path, final int line, final String message) {
+        final String tailUrl = GitlabProject.URL + "/" + mergeRequest.getProjectId() + "/repository/commits/" + sha + "/comments";
+        try {
+            call("comment on " + path + ":" + line, false, new Request<Map>() {
+                public Map execute(GitlabClient client) throws IOException {
+                    return client.send("POST", tailUrl, GitlabClient.form("note", message, "path", path, "line", line, "line_type", "new"), Map.class);
+                }
+            });
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to comment on " + path + ":" + line + " for merge request " + mergeRequest.getId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Sets the status of a commit in the source project, which Gitlab shows
+     * on the merge request when the commit is its head.
+     *
+     * @param targetUrl the page with the details, or null
+     * @return true if the status was set
+     */
+    public static boolean createCommitStatus(GitlabMergeRequest mergeRequest, String sha, final String state, final String name, final String description, final String targetUrl) {
+        final String tailUrl = GitlabProject.URL + "/" + sourceProjectIdOf(mergeRequest) + "/statuses/" + sha;
+        try {
+            call("set the status of " + sha, false, new Request<Map>() {
+                public Map execute(GitlabClient client) throws IOException {
+                    //a target url that is null is left out of the form
+                    return client.send("POST", tailUrl, GitlabClient.form("state", state, "name", name, "description", description, "target_url", targetUrl), Map.class);
+                }
+            });
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to set the status of " + sha + " for merge request " + mergeRequest.getId(), e);
+            return false;
+        }
+    }
+
+    private static final class CachedMergeRequest {
+
+        private final GitlabMergeRequest mergeRequest;
+        private final String sourceSha;
+        private final String etag;
+
+        private CachedMergeRequest(GitlabMergeRequest mergeRequest, String sourceSha, String etag) {
+            this.mergeRequest = mergeRequest;
+            this.sourceSha = sourceSha;
+            this.etag = etag;
+        }
+    }
+
 }
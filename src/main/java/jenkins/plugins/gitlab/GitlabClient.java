@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.gitlab;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import org.gitlab.api.GitlabAPI;
+
+/**
+ * Makes single requests to the Gitlab v3 API. Unlike the client of the
+ * Gitlab API library, every connection gets connect and read timeouts, so a
+ * request to a Gitlab that stopped answering fails on its own thread instead
+ * of hanging it. Responses, including error responses, are always read to
+ * the end and closed, so the JDK can keep the connection alive for the next
+ * request. The rate limit Gitlab reports in the headers of each answer is
+ * passed on to the rate limiter.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class GitlabClient {
+
+    private static final String API_NAMESPACE = "/api/v3";
+
+    //enough of an error response to tell what went wrong
+    private static final int MAX_ERROR_LENGTH = 200;
+
+    //a RateLimit-Reset above this is a point in time in epoch seconds, below it a number of seconds to wait
+    private static final long EPOCH_SECONDS_THRESHOLD = 1000000000L;
+
+    private final String hostUrl;
+    private final String privateToken;
+    private final int timeoutMillis;
+    private final SSLSocketFactory trustingSocketFactory;
+    private final RateLimiter rateLimiter;
+
+    /**
+     * @param hostUrl the url of the Gitlab server
+     * @param privateToken the token of the user making the requests
+     * @param ignoreCertificateErrors whether to trust any certificate
+     * @param timeoutMillis how long to wait to connect, and for each read
+     * @param rateLimiter told the requests Gitlab has left for the user, or
+     * null to ignore them
+     */
+    public GitlabClient(String hostUrl, String privateToken, boolean ignoreCertificateErrors, int timeoutMillis, RateLimiter rateLimiter) {
+        this.hostUrl = hostUrl != null && hostUrl.endsWith("/") ? hostUrl.substring(0, hostUrl.length() - 1) : hostUrl;
+        this.privateToken = privateToken;
+        this.timeoutMillis = timeoutMillis;
+        this.trustingSocketFactory = ignoreCertificateErrors ? trustingSocketFactory() : null;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Gets a resource.
+     *
+     * @param tailUrl the path of the resource below the api url
+     * @param type the class the json answer is read into
+     */
+    public <T> T get(String tailUrl, Class<T> type) throws IOException {
+        return send("GET", tailUrl, null, type);
+    }
+
+    /**
+     * Gets a resource unless it has not changed since the copy already held
+     * was fetched. Gitlab then only answers that it has not changed, without
+     * sending it again.
+     *
+     * @param etag the ETag Gitlab sent with the copy already held, or null
+     * if there is none
+     * @return the resource and its ETag, or null if the copy held has not
+     * changed
+     */
+    public <T> Tagged<T> getIfChanged(String tailUrl, Class<T> type, String etag) throws IOException {
+        return exchange("GET", tailUrl, null, type, etag);
+    }
+
+    /**
+     * Sends a form to Gitlab.
+     *
+     * @param method the HTTP method, such as POST or PUT
+     * @param tailUrl the path of the resource below the api url
+     * @param form the values to send, or null to send none
+     * @param type the class the json answer is read into
+     */
+    public <T> T send(String method, String tailUrl, Map<String, ?> form, Class<T> type) throws IOException {
+        Tagged<T> answer = exchange(method, tailUrl, form, type, null);
+        return answer != null ? answer.getValue() : null;
+    }
+
+    private <T> Tagged<T> exchange(String method, String tailUrl, Map<String, ?> form, Class<T> type, String etag) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(hostUrl + API_NAMESPACE + tailUrl).openConnection();
+        if (trustingSocketFactory != null && connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(trustingSocketFactory);
+            ((HttpsURLConnection) connection).setHostnameVerifier(TRUSTING_HOSTNAME_VERIFIER);
+        }
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("PRIVATE-TOKEN", privateToken);
+        connection.setRequestProperty("Accept", "application/json");
+        if (etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        if (form != null) {
+            byte[] body = encode(form).getBytes("UTF-8");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+            OutputStream output = connection.getOutputStream();
+            try {
+                output.write(body);
+            } finally {
+                output.close();
+            }
+        }
+        int status = connection.getResponseCode();
+        recordRateLimit(connection);
+        if (status >= 400) {
+            throw new GitlabHttpException(status, method + " " + tailUrl + " was answered with HTTP " + status + ": " + readError(connection),
+                    retryAfterMillis(connection));
+        }
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            //the answer has no body, so the connection can be used again as it is
+            return null;
+        }
+        //the mapper closes the stream it reads, so the answer is read to the
+        //end first to leave the connection free to be used again
+        InputStream input = connection.getInputStream();
+        try {
+            T result = GitlabAPI.MAPPER.readValue(readFully(input), type);
+            return new Tagged<T>(result, connection.getHeaderField("ETag"));
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Lowers the tokens left in the rate limiter to the requests Gitlab says
+     * the user has left, and stops handing them out until the limit resets
+     * when there are none.
+     */
+    private void recordRateLimit(HttpURLConnection connection) {
+        long remaining = headerAsLong(connection, "RateLimit-Remaining");
+        if (rateLimiter != null && remaining >= 0) {
+            rateLimiter.limitTo(remaining, millisUntil(headerAsLong(connection, "RateLimit-Reset")));
+        }
+    }
+
+    /**
+     * How long Gitlab asked to wait, from <code>Retry-After</code> in seconds
+     * or as a date, or else until <code>RateLimit-Reset</code>.
+     *
+     * @return the time to wait, or -1 if Gitlab did not say
+     */
+    private static long retryAfterMillis(HttpURLConnection connection) {
+        long seconds = headerAsLong(connection, "Retry-After");
+        if (seconds >= 0) {
+            return TimeUnit.SECONDS.toMillis(seconds);
+        }
+        long date = connection.getHeaderFieldDate("Retry-After", -1);
+        if (date > 0) {
+            return Math.max(0, date - System.currentTimeMillis());
+        }
+        return millisUntil(headerAsLong(connection, "RateLimit-Reset"));
+    }
+
+    /**
+     * @param reset a RateLimit-Reset value, in epoch seconds or seconds from
+     * now
+     * @return the time until then, or -1 if there was no value
+     */
+    private static long millisUntil(long reset) {
+        if (reset < 0) {
+            return -1;
+        }
+        if (reset < EPOCH_SECONDS_THRESHOLD) {
+            return TimeUnit.SECONDS.toMillis(reset);
+        }
+        return Math.max(0, TimeUnit.SECONDS.toMillis(reset) - System.currentTimeMillis());
+    }
+
+    /**
+     * @return the header as a number, or -1 if it is missing or not a
+     * number
+     */
+    private static long headerAsLong(HttpURLConnection connection, String name) {
+        String value = connection.getHeaderField(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String encode(Map<String, ?> form) throws UnsupportedEncodingException {
+        StringBuilder encoded = new StringBuilder();
+        for (Map.Entry<String, ?> field : form.entrySet()) {
+            if (field.getValue() == null) {
+                continue;
+            }
+            if (encoded.length() > 0) {
+                encoded.append('&');
+            }
+            encoded.append(URLEncoder.encode(field.getKey(), "UTF-8")).append('=')
+                    .append(URLEncoder.encode(field.getValue().toString(), "UTF-8"));
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Reads the start of the error response, and skips the rest so the
+     * connection can be reused.
+     */
+    private static String readError(HttpURLConnection connection) {
+        InputStream error = connection.getErrorStream();
+        if (error == null) {
+            return "";
+        }
+        try {
+            byte[] start = new byte[MAX_ERROR_LENGTH];
+            int length = 0;
+            int read;
+            while (length < start.length && (read = error.read(start, length, start.length - length)) > 0) {
+                length += read;
+            }
+            drain(error);
+            return new String(start, 0, length, "UTF-8");
+        } catch (IOException e) {
+            return "";
+        } finally {
+            try {
+                error.close();
+            } catch (IOException e) {
+                //nothing more can be done
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) > 0) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void drain(InputStream input) throws IOException {
+        byte[] buffer = new byte[4096];
+        while (input.read(buffer) > 0) {
+            //skipped
+        }
+    }
+
+    /**
+     * Makes a form from pairs of names and values.
+     */
+    public static Map<String, Object> form(Object... namesAndValues) {
+        Map<String, Object> form = new LinkedHashMap<String, Object>();
+        for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+            form.put(namesAndValues[i].toString(), namesAndValues[i + 1]);
+        }
+        return form;
+    }
+
+    /**
+     * A resource together with the ETag Gitlab sent with it.
+     *
+     * @param <T> the type of the resource
+     */
+    public static final class Tagged<T> {
+
+        private final T value;
+        private final String etag;
+
+        private Tagged(T value, String etag) {
+            this.value = value;
+            this.etag = etag;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * The ETag, or null if Gitlab did not send one.
+         */
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    private static SSLSocketFactory trustingSocketFactory() {
+        TrustManager trustAll = new X509TrustManager() {
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+        };
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[]{trustAll}, null);
+            return context.getSocketFactory();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not set up trusting any certificate", e);
+        }
+    }
+
+    private static final HostnameVerifier TRUSTING_HOSTNAME_VERIFIER = new HostnameVerifier() {
+        public boolean verify(String hostname, SSLSession session) {
+            return true;
+        }
+    };
+
+}
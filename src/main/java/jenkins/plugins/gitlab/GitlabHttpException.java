@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.gitlab;
+
+import java.io.IOException;
+
+/**
+ * Thrown when Gitlab answers a request with an error status.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class GitlabHttpException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+    private final long retryAfterMillis;
+
+    public GitlabHttpException(int status, String message) {
+        this(status, message, -1);
+    }
+
+    /**
+     * @param retryAfterMillis how long Gitlab asked to wait before sending
+     * the request again, or -1 if it did not say
+     */
+    public GitlabHttpException(int status, String message, long retryAfterMillis) {
+        super(message);
+        this.status = status;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * The HTTP status Gitlab answered with.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * How long Gitlab asked to wait before sending the request again, or -1
+     * if it did not say.
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+}
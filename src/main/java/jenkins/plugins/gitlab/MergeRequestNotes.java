@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.gitlab;
+
+import hudson.Util;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.gitlab.api.models.GitlabMergeRequest;
+import org.gitlab.api.models.GitlabNote;
+import org.gitlab.api.models.GitlabUser;
+
+/**
+ * Keeps one set of notes per report on a merge request. Each note carries a
+ * hidden marker with the report it belongs to, its position in the report
+ * and a hash of its content, so a later build edits the notes it posted
+ * before instead of adding new ones, and leaves alone the ones whose content
+ * has not changed. Notes of other reports on the same merge request, such as
+ * those of another matrix configuration, are left alone.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class MergeRequestNotes {
+
+    private static final Logger LOGGER = Logger.getLogger(MergeRequestNotes.class.getName());
+
+    private static final Pattern MARKER = Pattern.compile("<!-- gitlab-sonar-reporter report:(\\w+) note:(\\d+) hash:(\\w+) -->");
+
+    /**
+     * The most characters the hidden marker adds to a note, which has to be
+     * left free when deciding how much of the report goes in each note.
+     */
+    public static final int MAX_MARKER_LENGTH = marker("00000000", Integer.MAX_VALUE, Util.getDigestOf("")).length();
+
+    private static final String SUPERSEDED = "*This part of the report is no longer needed.*";
+
+    private static final int CACHE_SIZE = 500;
+    private static final long CACHE_TTL = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The notes last posted for each report, so an unchanged report
+     * does not need any request at all.
+     */
+    private static final ExpiringCache<String, List<PostedNote>> POSTED = new ExpiringCache<String, List<PostedNote>>(CACHE_SIZE, CACHE_TTL);
+
+    //two builds posting the same report at once would both create its notes
+    private static final KeyedLocks LOCKS = new KeyedLocks();
+
+    /**
+     * Creates or updates the report notes.
+     *
+     * @param botUsername the Gitlab user the notes are posted as
+     * @param reportId tells the notes of this report apart from those of
+     * other reports on the merge request
+     * @param bodies the content of each note, in order
+     * @throws IOException if a note could not be posted, leaving the ones
+     * after it as they were
+     */
+    public static void post(GitlabMergeRequest mergeRequest, String botUsername, String reportId, List<String> bodies) throws IOException {
+        String key = mergeRequest.getProjectId() + "!" + mergeRequest.getId() + "#" + reportId;
+        LOCKS.lock(key);
+        try {
+            postLocked(mergeRequest, botUsername, reportId, bodies, key);
+        } finally {
+            LOCKS.unlock(key);
+        }
+    }
+
+    private static void postLocked(GitlabMergeRequest mergeRequest, String botUsername, String reportId, List<String> bodies, String key) throws IOException {
+        List<String> hashes = new ArrayList<String>(bodies.size());
+        for (String body : bodies) {
+            hashes.add(Util.getDigestOf(body));
+        }
+        List<PostedNote> previous = POSTED.get(key);
+        if (previous == null) {
+            previous = findPosted(mergeRequest, botUsername, reportId);
+        } else if (hashesOf(previous).equals(hashes)) {
+            LOGGER.log(Level.INFO, "The report for merge request {0} has not changed, nothing to post", key);
+            return;
+        }
+
+        List<PostedNote> posted = new ArrayList<PostedNote>(Math.max(bodies.size(), previous.size()));
+        boolean complete = false;
+        try {
+            for (int i = 0; i < bodies.size() || i < previous.size(); i++) {
+                String body = i < bodies.size() ? bodies.get(i) : SUPERSEDED;
+                String hash = i < hashes.size() ? hashes.get(i) : Util.getDigestOf(body);
+                PostedNote note = i < previous.size() ? previous.get(i) : null;
+                if (note != null && note.hash.equals(hash)) {
+                    posted.add(note);
+                    continue;
+                }
+                String message = body + marker(reportId, i + 1, hash);
+                GitlabNote saved = note != null ? Gitlab.updateNote(mergeRequest, note.id, message) : null;
+                if (saved == null) {
+                    //a note someone deleted is posted again
+                    saved = Gitlab.createNote(mergeRequest, message);
+                }
+                posted.add(new PostedNote(saved.getId(), hash));
+            }
+            complete = true;
+        } finally {
+            if (complete) {
+                POSTED.put(key, posted);
+            } else {
+                POSTED.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Forgets the notes posted, for when the Gitlab configuration changes.
+     */
+    static void clear() {
+        POSTED.clear();
+    }
+
+    /**
+     * Finds the notes of the report posted by an earlier build, in order.
+     */
+    private static List<PostedNote> findPosted(GitlabMergeRequest mergeRequest, String botUsername, String reportId) throws IOException {
+        Map<Integer, PostedNote> byPosition = new HashMap<Integer, PostedNote>();
+        for (GitlabNote note : Gitlab.getNotes(mergeRequest)) {
+            GitlabUser author = note.getAuthor();
+            if (author == null || botUsername == null || !botUsername.equals(author.getUsername()) || note.getBody() == null) {
+                continue;
+            }
+            Matcher marker = MARKER.matcher(note.getBody());
+            if (marker.find() && marker.group(1).equals(reportId)) {
+                byPosition.put(Integer.parseInt(marker.group(2)), new PostedNote(note.getId(), marker.group(3)));
+            }
+        }
+        List<PostedNote> posted = new ArrayList<PostedNote>(byPosition.size());
+        //only a run of notes from the start can be reused, a gap means the rest are stale
+        for (int position = 1; byPosition.containsKey(position); position++) {
+            posted.add(byPosition.get(position));
+        }
+        return posted;
+    }
+
+    /**
+     * The hidden marker put at the end of each note.
+     */
+    private static String marker(String reportId, int position, String hash) {
+        return "\n\n<!-- gitlab-sonar-reporter report:" + reportId + " note:" + position + " hash:" + hash + " -->";
+    }
+
+    private static List<String> hashesOf(List<PostedNote> notes) {
+        List<String> hashes = new ArrayList<String>(notes.size());
+        for (PostedNote note : notes) {
+            hashes.add(note.hash);
+        }
+        return hashes;
+    }
+
+    private static final class PostedNote {
+
+        private final int id;
+        private final String hash;
+
+        private PostedNote(int id, String hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+    }
+
+}
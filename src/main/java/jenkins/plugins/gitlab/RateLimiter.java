@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.gitlab;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket shared by every request to Gitlab, so the reporters of all
+ * running builds together stay under the request rate allowed for the bot
+ * user. Tokens refill at the configured rate and up to a couple of seconds
+ * worth can be saved for a burst. The requests Gitlab reports the user has
+ * left cap the tokens, so other tools using the same user are accounted for,
+ * and when Gitlab says the limit has been hit no tokens are handed out until
+ * its rate limit window is over.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class RateLimiter {
+
+    //how many seconds of requests may be saved up
+    private static final double BURST_SECONDS = 2;
+
+    private double permitsPerSecond;
+    private double available;
+    private long refilledAt;
+    private long blockedUntil;
+
+    public RateLimiter(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.available = maxPermits();
+        this.refilledAt = System.nanoTime();
+        this.blockedUntil = refilledAt;
+    }
+
+    /**
+     * Changes the rate, keeping the tokens already saved up to the new
+     * maximum.
+     */
+    public synchronized void setRate(double permitsPerSecond) {
+        if (this.permitsPerSecond != permitsPerSecond) {
+            refill(System.nanoTime());
+            this.permitsPerSecond = permitsPerSecond;
+            available = Math.min(available, maxPermits());
+        }
+    }
+
+    /**
+     * Waits for a token, unless no tokens are handed out because Gitlab said
+     * the limit was exceeded. Then the caller is better off trying again
+     * later than holding its thread for the rest of the pause.
+     *
+     * @return false if no token was taken because of the pause
+     */
+    public boolean tryAcquire() throws InterruptedException {
+        while (true) {
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                refill(now);
+                if (blockedUntil - now > 0) {
+                    return false;
+                } else if (available >= 1) {
+                    available -= 1;
+                    return true;
+                } else {
+                    wait = (long) ((1 - available) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+                }
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(1, wait));
+        }
+    }
+
+    /**
+     * Hands out no tokens for the given time, for when Gitlab has answered
+     * that the rate limit was exceeded.
+     */
+    public synchronized void pause(long millis) {
+        //the wait for a token is short unless paused, see tryAcquire
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (until - blockedUntil > 0) {
+            blockedUntil = until;
+        }
+        available = 0;
+    }
+
+    /**
+     * Takes in the requests Gitlab says are left, so no more tokens are
+     * handed out right away than Gitlab will still take. When none are left
+     * no tokens are handed out until the limit resets.
+     *
+     * @param remaining the requests left, from <code>RateLimit-Remaining</code>
+     * @param resetMillis the time until the limit resets, or -1 if unknown
+     */
+    public synchronized void limitTo(long remaining, long resetMillis) {
+        refill(System.nanoTime());
+        available = Math.min(available, remaining);
+        if (remaining <= 0 && resetMillis > 0) {
+            pause(resetMillis);
+        }
+    }
+
+    /**
+     * The number of requests that could be made right now without waiting.
+     */
+    public synchronized int getAvailablePermits() {
+        long now = System.nanoTime();
+        refill(now);
+        return blockedUntil - now > 0 ? 0 : (int) available;
+    }
+
+    private void refill(long now) {
+        double elapsed = (double) (now - refilledAt) / TimeUnit.SECONDS.toNanos(1);
+        available = Math.min(maxPermits(), available + elapsed * permitsPerSecond);
+        refilledAt = now;
+    }
+
+    private double maxPermits() {
+        return Math.max(1, permitsPerSecond * BURST_SECONDS);
+    }
+
+}
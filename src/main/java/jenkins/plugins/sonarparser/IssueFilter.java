@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.sonarparser;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import jenkins.plugins.sonarparser.models.SonarComponent;
+import jenkins.plugins.sonarparser.models.SonarIssue;
+import jenkins.plugins.sonarparser.models.SonarSeverity;
+
+/**
+ * Decides which issues are reported, by severity, rule and file. It is
+ * applied while the report is parsed, so the issues it rejects are dropped
+ * as soon as they are read. The path patterns are compiled once into
+ * segments, and matched without regular expressions.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public final class IssueFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Accepts every issue.
+     */
+    public static final IssueFilter ALL = new IssueFilter(null, Collections.<String>emptySet(), Collections.<String>emptySet(),
+            Collections.<PathPattern>emptyList(), Collections.<PathPattern>emptyList());
+
+    private final SonarSeverity minimumSeverity;
+    private final Set<String> includedRules;
+    private final Set<String> excludedRules;
+    private final List<PathPattern> includedPaths;
+    private final List<PathPattern> excludedPaths;
+
+    private IssueFilter(SonarSeverity minimumSeverity, Set<String> includedRules, Set<String> excludedRules, List<PathPattern> includedPaths, List<PathPattern> excludedPaths) {
+        this.minimumSeverity = minimumSeverity;
+        this.includedRules = includedRules;
+        this.excludedRules = excludedRules;
+        this.includedPaths = includedPaths;
+        this.excludedPaths = excludedPaths;
+    }
+
+    /**
+     * Creates a filter from the job settings. The lists are separated by
+     * commas or white space, and an empty list of included rules or paths
+     * includes all of them.
+     *
+     * @param minimumSeverity the least severe severity reported, or empty to
+     * report all
+     * @param includedRules the keys of the only rules reported
+     * @param excludedRules the keys of rules never reported
+     * @param includedPaths Ant style patterns of the only files reported
+     * @param excludedPaths Ant style patterns of files never reported
+     */
+    public static IssueFilter create(String minimumSeverity, String includedRules, String excludedRules, String includedPaths, String excludedPaths) {
+        IssueFilter filter = new IssueFilter(SonarSeverity.of(minimumSeverity), new HashSet<String>(split(includedRules)), new HashSet<String>(split(excludedRules)),
+                compile(includedPaths), compile(excludedPaths));
+        return filter.acceptsAll() ? ALL : filter;
+    }
+
+    public boolean acceptsAll() {
+        return minimumSeverity == null && includedRules.isEmpty() && excludedRules.isEmpty()
+                && includedPaths.isEmpty() && excludedPaths.isEmpty();
+    }
+
+    public boolean accepts(SonarIssue issue) {
+        if (minimumSeverity != null && SonarSeverity.rank(issue.getSeverity()) > minimumSeverity.ordinal()) {
+            return false;
+        }
+        if (!includedRules.isEmpty() && !includedRules.contains(issue.getRule())) {
+            return false;
+        }
+        if (excludedRules.contains(issue.getRule())) {
+            return false;
+        }
+        if (includedPaths.isEmpty() && excludedPaths.isEmpty()) {
+            return true;
+        }
+        String component = SonarComponent.pathOf(issue.getComponent());
+        String[] path = PathPattern.segments(component != null ? component : "");
+        if (!includedPaths.isEmpty() && !matchesAny(includedPaths, path)) {
+            return false;
+        }
+        return !matchesAny(excludedPaths, path);
+    }
+
+    private static boolean matchesAny(List<PathPattern> patterns, String[] path) {
+        for (PathPattern pattern : patterns) {
+            if (pattern.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> split(String list) {
+        List<String> values = new ArrayList<String>();
+        if (list != null) {
+            for (String value : list.split("[,\\s]+")) {
+                if (value.length() > 0) {
+                    values.add(value);
+                }
+            }
+        }
+        return values;
+    }
+
+    private static List<PathPattern> compile(String patterns) {
+        List<PathPattern> compiled = new ArrayList<PathPattern>();
+        for (String pattern : split(patterns)) {
+            compiled.add(new PathPattern(pattern));
+        }
+        return compiled;
+    }
+
+    /**
+     * An Ant style path pattern, where <code>**</code> matches any number of
+     * directories, <code>*</code> any part of a name and <code>?</code> one
+     * character of a name. A pattern ending with a slash matches everything
+     * below that directory.
+     */
+    static final class PathPattern implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final String ANY_DIRECTORIES = "**";
+
+        private final String[] segments;
+
+        PathPattern(String pattern) {
+            String normalized = pattern.replace('\\', '/');
+            if (normalized.endsWith("/")) {
+                normalized += ANY_DIRECTORIES;
+            }
+            this.segments = segments(normalized);
+        }
+
+        static String[] segments(String path) {
+            List<String> segments = new ArrayList<String>();
+            for (String segment : path.replace('\\', '/').split("/")) {
+                if (segment.length() > 0) {
+                    segments.add(segment);
+                }
+            }
+            return segments.toArray(new String[segments.size()]);
+        }
+
+        /**
+         * Matches the path one segment at a time, backtracking to the last
+         * <code>**</code> when a segment does not match.
+         */
+        boolean matches(String[] path) {
+            int p = 0;
+            int s = 0;
+            int starPattern = -1;
+            int starPath = 0;
+            while (s < path.length) {
+                if (p < segments.length && ANY_DIRECTORIES.equals(segments[p])) {
+                    starPattern = p++;
+                    starPath = s;
+                } else if (p < segments.length && matches(segments[p], path[s])) {
+                    p++;
+                    s++;
+                } else if (starPattern >= 0) {
+                    p = starPattern + 1;
+                    s = ++starPath;
+                } else {
+                    return false;
+                }
+            }
+            while (p < segments.length && ANY_DIRECTORIES.equals(segments[p])) {
+                p++;
+            }
+            return p == segments.length;
+        }
+
+        /**
+         * Matches one name against a segment of the pattern in the same way,
+         * backtracking to the last <code>*</code>.
+         */
+        private static boolean matches(String pattern, String name) {
+            int p = 0;
+            int n = 0;
+            int star = -1;
+            int starName = 0;
+            while (n < name.length()) {
+                if (p < pattern.length() && pattern.charAt(p) == '*') {
+                    star = p++;
+                    starName = n;
+                } else if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == name.charAt(n))) {
+                    p++;
+                    n++;
+                } else if (star >= 0) {
+                    p = star + 1;
+                    n = ++starName;
+                } else {
+                    return false;
+                }
+            }
+            while (p < pattern.length() && pattern.charAt(p) == '*') {
+                p++;
+            }
+            return p == pattern.length();
+        }
+    }
+
+}
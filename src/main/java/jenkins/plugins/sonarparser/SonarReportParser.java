@@ -21,11 +21,22 @@
  */
 package jenkins.plugins.sonarparser;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import jenkins.plugins.sonarparser.models.SonarReport;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import jenkins.plugins.sonarparser.models.SonarComponent;
+import jenkins.plugins.sonarparser.models.SonarIssue;
+import jenkins.plugins.sonarparser.models.SonarRule;
 import jenkins.plugins.sonarparser.utils.JodaDateTimeModule;
 
 /**
@@ -34,12 +45,109 @@ import jenkins.plugins.sonarparser.utils.JodaDateTimeModule;
  */
 public class SonarReportParser {
 
-    public static SonarReport parse(InputStream input) throws IOException {
+    /**
+     * Configured once and shared, so Jackson's deserializer caches survive
+     * between builds. The mapper is never reconfigured after this, and the
+     * readers are immutable, so they are safe to use from concurrent builds.
+     */
+    private static final ObjectMapper MAPPER = createMapper();
+    private static final ObjectReader REPORT_READER = MAPPER.reader(SonarReport.class);
+    private static final ObjectReader ISSUE_READER = MAPPER.reader(SonarIssue.class);
+
+    private static ObjectMapper createMapper() {
         ObjectMapper mapper = new ObjectMapper();
         mapper.registerModule(new JodaDateTimeModule());
         mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-        SonarReport report = mapper.readValue(input, SonarReport.class);
+        return mapper;
+    }
+
+    public static SonarReport parse(InputStream input) throws IOException {
+        SonarReport report = REPORT_READER.readValue(input);
         return report;
     }
 
+    /**
+     * Reads the report one issue at a time and only keeps the new issues, so
+     * the memory used does not grow with the size of the report. The
+     * components and rules are skipped, and the returned report carries the
+     * total number of issues seen.
+     */
+    public static SonarReport parseNewIssues(InputStream input) throws IOException {
+        return parseNewIssues(input, IssueFilter.ALL);
+    }
+
+    /**
+     * Reads the new issues like {@link #parseNewIssues(InputStream)}, and
+     * also drops the issues the filter rejects as soon as they are read.
+     */
+    public static SonarReport parseNewIssues(InputStream input, IssueFilter filter) throws IOException {
+        JsonParser parser = MAPPER.getFactory().createParser(input);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected the sonar report to be a json object", parser.getCurrentLocation());
+            }
+            String version = null;
+            List<SonarIssue> newIssues = new ArrayList<SonarIssue>();
+            int totalIssueCount = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("version".equals(field)) {
+                    version = parser.getValueAsString();
+                } else if ("issues".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        SonarIssue issue = ISSUE_READER.readValue(parser);
+                        totalIssueCount++;
+                        if (issue.isIsNew() && filter.accepts(issue)) {
+                            newIssues.add(issue);
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            SonarReport report = new SonarReport(version, newIssues, new ArrayList<SonarComponent>(), new ArrayList<SonarRule>());
+            report.setTotalIssueCount(totalIssueCount);
+            return report;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Merges reports, such as those of the modules of one build, into one.
+     * A new issue found in more than one report, going by its key, is only
+     * kept once, and is only counted once in the total. Other issues are
+     * dropped while parsing, so they can not be compared, and the total
+     * counts them once for every report they are in.
+     */
+    public static SonarReport merge(List<SonarReport> reports) {
+        Map<String, SonarIssue> byKey = new LinkedHashMap<String, SonarIssue>();
+        List<SonarIssue> issues = new ArrayList<SonarIssue>();
+        String version = null;
+        int totalIssueCount = 0;
+        for (SonarReport report : reports) {
+            if (version == null) {
+                version = report.getVersion();
+            }
+            totalIssueCount += report.getTotalIssueCount();
+            if (report.getIssues() == null) {
+                continue;
+            }
+            for (SonarIssue issue : report.getIssues()) {
+                if (issue.getKey() == null) {
+                    issues.add(issue);
+                } else if (byKey.containsKey(issue.getKey())) {
+                    totalIssueCount--;
+                } else {
+                    byKey.put(issue.getKey(), issue);
+                    issues.add(issue);
+                }
+            }
+        }
+        SonarReport merged = new SonarReport(version, issues, new ArrayList<SonarComponent>(), new ArrayList<SonarRule>());
+        merged.setTotalIssueCount(totalIssueCount);
+        return merged;
+    }
+
 }
@@ -21,11 +21,15 @@
  */
 package jenkins.plugins.sonarparser.models;
 
+import java.io.Serializable;
+
 /**
  *
  * @author jacob.schoen@ge.com
  */
-public class SonarComponent {
+public class SonarComponent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String component;
 
@@ -36,6 +40,20 @@ public class SonarComponent {
         this.component = component;
     }
 
+    /**
+     * Sonar components are keys like <tt>project:module:src/Foo.java</tt>,
+     * the path of the file within its module is the part after the last
+     * colon.
+     *
+     * @return the path, or null if there is no component
+     */
+    public static String pathOf(String component) {
+        if (component == null) {
+            return null;
+        }
+        return component.substring(component.lastIndexOf(':') + 1);
+    }
+
     public String getComponent() {
         return component;
     }
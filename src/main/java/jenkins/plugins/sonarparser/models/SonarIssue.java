@@ -21,13 +21,16 @@
  */
 package jenkins.plugins.sonarparser.models;
 
+import java.io.Serializable;
 import org.joda.time.DateTime;
 
 /**
  *
  * @author jacob.schoen@ge.com
  */
-public class SonarIssue {
+public class SonarIssue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String key;
     private String component;
@@ -21,14 +21,22 @@
  */
 package jenkins.plugins.sonarparser.models;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
+ * The lists of a report are copied when set and can not be modified, so the
+ * views and hash derived from them stay correct.
  *
  * @author jacob.schoen@ge.com
  */
-public class SonarReport {
+public class SonarReport implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String version;
 
@@ -38,6 +46,14 @@ public class SonarReport {
 
     private List<SonarRule> rules;
 
+    private Integer totalIssueCount;
+
+    private Integer fixedIssueCount;
+
+    private transient volatile Views views;
+
+    private transient volatile int hash;
+
     public SonarReport() {
     }
 
@@ -47,9 +63,9 @@ public class SonarReport {
 
     public SonarReport(String version, List<SonarIssue> issues, List<SonarComponent> components, List<SonarRule> rules) {
         this.version = version;
-        this.issues = issues;
-        this.components = components;
-        this.rules = rules;
+        this.issues = sealed(issues);
+        this.components = sealed(components);
+        this.rules = sealed(rules);
     }
 
     public String getVersion() {
@@ -58,6 +74,7 @@ public class SonarReport {
 
     public void setVersion(String version) {
         this.version = version;
+        changed();
     }
 
     public List<SonarIssue> getIssues() {
@@ -65,7 +82,8 @@ public class SonarReport {
     }
 
     public void setIssues(List<SonarIssue> issues) {
-        this.issues = issues;
+        this.issues = sealed(issues);
+        changed();
     }
 
     public List<SonarComponent> getComponents() {
@@ -73,7 +91,8 @@ public class SonarReport {
     }
 
     public void setComponents(List<SonarComponent> components) {
-        this.components = components;
+        this.components = sealed(components);
+        changed();
     }
 
     public List<SonarRule> getRules() {
@@ -81,26 +100,119 @@ public class SonarReport {
     }
 
     public void setRules(List<SonarRule> rules) {
-        this.rules = rules;
+        this.rules = sealed(rules);
+        changed();
     }
 
+    /**
+     * The new issues, in the order of the report. The list can not be
+     * modified and is only built once.
+     */
     public List<SonarIssue> getNewIssues() {
-        ArrayList<SonarIssue> newIssues = new ArrayList<SonarIssue>();
-        for (SonarIssue issue : issues) {
-            if (issue.isIsNew()) {
-                newIssues.add(issue);
-            }
+        return views().newIssues;
+    }
+
+    public int getNewIssueCount() {
+        return views().newIssues.size();
+    }
+
+    /**
+     * The new issues grouped by component, in the order each component is
+     * first seen.
+     */
+    public Map<String, List<SonarIssue>> getNewIssuesByComponent() {
+        return views().byComponent;
+    }
+
+    /**
+     * The new issues grouped by severity, in the order each severity is first
+     * seen.
+     */
+    public Map<String, List<SonarIssue>> getNewIssuesBySeverity() {
+        return views().bySeverity;
+    }
+
+    /**
+     * The new issues grouped by rule, in the order each rule is first seen.
+     */
+    public Map<String, List<SonarIssue>> getNewIssuesByRule() {
+        return views().byRule;
+    }
+
+    /**
+     * The number of new issues with the given severity.
+     */
+    public int getNewIssueCount(String severity) {
+        List<SonarIssue> matches = views().bySeverity.get(severity);
+        return matches != null ? matches.size() : 0;
+    }
+
+    private Views views() {
+        Views current = views;
+        if (current == null) {
+            current = new Views(issues);
+            views = current;
+        }
+        return current;
+    }
+
+    private static <T> List<T> sealed(List<T> list) {
+        return list != null ? Collections.unmodifiableList(new ArrayList<T>(list)) : null;
+    }
+
+    /**
+     * Drops what was derived from the report, so it is built again from the
+     * changed values.
+     */
+    private void changed() {
+        views = null;
+        hash = 0;
+    }
+
+    /**
+     * The number of issues in the full report. This stays correct on a report
+     * read with {@link jenkins.plugins.sonarparser.SonarReportParser#parseNewIssues(java.io.InputStream)},
+     * which only keeps the new issues.
+     */
+    public int getTotalIssueCount() {
+        if (totalIssueCount != null) {
+            return totalIssueCount;
         }
-        return newIssues;
+        return issues != null ? issues.size() : 0;
+    }
+
+    public void setTotalIssueCount(Integer totalIssueCount) {
+        this.totalIssueCount = totalIssueCount;
+        changed();
+    }
+
+    /**
+     * The number of issues reported for the merge request before that are no
+     * longer found, or null when the report is not compared to an earlier
+     * one.
+     */
+    public Integer getFixedIssueCount() {
+        return fixedIssueCount;
+    }
+
+    public void setFixedIssueCount(Integer fixedIssueCount) {
+        this.fixedIssueCount = fixedIssueCount;
+        changed();
     }
 
     @Override
     public int hashCode() {
+        if (this.hash != 0) {
+            return this.hash;
+        }
         int hash = 7;
         hash = 17 * hash + (this.version != null ? this.version.hashCode() : 0);
         hash = 17 * hash + (this.issues != null ? this.issues.hashCode() : 0);
         hash = 17 * hash + (this.components != null ? this.components.hashCode() : 0);
         hash = 17 * hash + (this.rules != null ? this.rules.hashCode() : 0);
+        hash = 17 * hash + (this.totalIssueCount != null ? this.totalIssueCount.hashCode() : 0);
+        hash = 17 * hash + (this.fixedIssueCount != null ? this.fixedIssueCount.hashCode() : 0);
+        this.hash = hash;
         return hash;
     }
 
@@ -122,7 +234,13 @@ public class SonarReport {
         if (this.components != other.components && (this.components == null || !this.components.equals(other.components))) {
             return false;
         }
-        return this.rules == other.rules || (this.rules != null && this.rules.equals(other.rules));
+        if (this.rules != other.rules && (this.rules == null || !this.rules.equals(other.rules))) {
+            return false;
+        }
+        if (this.totalIssueCount != other.totalIssueCount && (this.totalIssueCount == null || !this.totalIssueCount.equals(other.totalIssueCount))) {
+            return false;
+        }
+        return this.fixedIssueCount == other.fixedIssueCount || (this.fixedIssueCount != null && this.fixedIssueCount.equals(other.fixedIssueCount));
     }
 
     @Override
@@ -130,4 +248,53 @@ public class SonarReport {
         return "SonarReport{" + "version=" + version + '}';
     }
 
+    /**
+     * The views of the new issues, all built in a single pass over the
+     * issues.
+     */
+    private static final class Views {
+
+        private final List<SonarIssue> newIssues;
+        private final Map<String, List<SonarIssue>> byComponent;
+        private final Map<String, List<SonarIssue>> bySeverity;
+        private final Map<String, List<SonarIssue>> byRule;
+
+        private Views(List<SonarIssue> issues) {
+            List<SonarIssue> matches = new ArrayList<SonarIssue>();
+            Map<String, List<SonarIssue>> components = new LinkedHashMap<String, List<SonarIssue>>();
+            Map<String, List<SonarIssue>> severities = new LinkedHashMap<String, List<SonarIssue>>();
+            Map<String, List<SonarIssue>> rules = new LinkedHashMap<String, List<SonarIssue>>();
+            if (issues != null) {
+                for (SonarIssue issue : issues) {
+                    if (issue.isIsNew()) {
+                        matches.add(issue);
+                        group(components, issue.getComponent(), issue);
+                        group(severities, issue.getSeverity(), issue);
+                        group(rules, issue.getRule(), issue);
+                    }
+                }
+            }
+            this.newIssues = Collections.unmodifiableList(matches);
+            this.byComponent = seal(components);
+            this.bySeverity = seal(severities);
+            this.byRule = seal(rules);
+        }
+
+        private static void group(Map<String, List<SonarIssue>> groups, String key, SonarIssue issue) {
+            List<SonarIssue> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<SonarIssue>();
+                groups.put(key, group);
+            }
+            group.add(issue);
+        }
+
+        private static Map<String, List<SonarIssue>> seal(Map<String, List<SonarIssue>> groups) {
+            for (Map.Entry<String, List<SonarIssue>> entry : groups.entrySet()) {
+                entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(groups);
+        }
+    }
+
 }
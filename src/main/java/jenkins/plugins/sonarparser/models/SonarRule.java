@@ -21,11 +21,15 @@
  */
 package jenkins.plugins.sonarparser.models;
 
+import java.io.Serializable;
+
 /**
  *
  * @author jacob.schoen@ge.com
  */
-public class SonarRule {
+public class SonarRule implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String key;
     private String rule;
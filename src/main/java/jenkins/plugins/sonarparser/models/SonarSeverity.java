@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.sonarparser.models;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * The severities Sonar gives issues, from the most to the least severe.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public enum SonarSeverity {
+
+    BLOCKER, CRITICAL, MAJOR, MINOR, INFO;
+
+    /**
+     * Orders issues from the most to the least severe, with issues of an
+     * unknown severity last.
+     */
+    public static final Comparator<SonarIssue> MOST_SEVERE_FIRST = new Comparator<SonarIssue>() {
+        public int compare(SonarIssue first, SonarIssue second) {
+            return rank(first.getSeverity()) - rank(second.getSeverity());
+        }
+    };
+
+    /**
+     * @return the severity with the given name, ignoring case, or null if
+     * there is none
+     */
+    public static SonarSeverity of(String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the position of the severity from the most severe, with
+     * unknown severities after all the known ones
+     */
+    public static int rank(String name) {
+        SonarSeverity severity = of(name);
+        return severity != null ? severity.ordinal() : values().length;
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
+import java.io.File;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * Runs the <code>gitlabSonarReport</code> step in a pipeline. Nothing listens
+ * on the Gitlab host, so the report stays in the outbox, and the test checks
+ * what the step returns to the script.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class GitlabSonarReportStepTest {
+
+    private static final String REPORT = "{\"version\":\"5.1\",\"issues\":["
+            + "{\"key\":\"a\",\"component\":\"group:project:src/A.java\",\"line\":3,\"message\":\"Fix this\",\"severity\":\"BLOCKER\",\"rule\":\"squid:S1\",\"status\":\"OPEN\",\"isNew\":true},"
+            + "{\"key\":\"b\",\"component\":\"group:project:src/B.java\",\"line\":7,\"message\":\"And this\",\"severity\":\"MINOR\",\"rule\":\"squid:S2\",\"status\":\"OPEN\",\"isNew\":true},"
+            + "{\"key\":\"c\",\"component\":\"group:project:src/C.java\",\"line\":1,\"message\":\"Old news\",\"severity\":\"MAJOR\",\"rule\":\"squid:S3\",\"status\":\"OPEN\",\"isNew\":false}"
+            + "],\"components\":[],\"rules\":[]}";
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Before
+    public void configureGitlab() throws Exception {
+        JSONObject form = new JSONObject();
+        form.put("gitlabHostUrl", "http://localhost:1");
+        form.put("botUsername", "jenkins");
+        form.put("botApiToken", "token");
+        form.put("ignoreCertificateErrors", false);
+        form.put("messageHeader", "Number of new issues: $NEW_ISSUE_COUNT");
+        form.put("messageIssue", "$SEVERITY $MESSAGE");
+        form.put("messageFooter", "");
+        form.put("maxRetries", 0);
+        GitlabSonarReporter.DESCRIPTOR.configure(null, form);
+    }
+
+    @Test
+    public void returnsTheIssueCounts() throws Exception {
+        WorkflowJob job = r.jenkins.createProject(WorkflowJob.class, "pipeline");
+        job.setDefinition(new CpsFlowDefinition(
+                "node {\n"
+                + "  writeFile file: 'sonar-report.json', text: '" + REPORT + "'\n"
+                + "  def issues = gitlabSonarReport projectPath: 'group/project', mergeRequestId: 1, sonarResults: 'sonar-report.json', minimumSeverity: 'MAJOR'\n"
+                + "  echo \"new=${issues.newIssues} blocker=${issues.BLOCKER} minor=${issues.MINOR} total=${issues.totalIssues} reported=${issues.reportedIssues}\"\n"
+                + "}"));
+        WorkflowRun run = r.assertBuildStatusSuccess(job.scheduleBuild2(0));
+        //the minor issue is filtered out and the old one is not new, but both count in the total
+        r.assertLogContains("new=1 blocker=1 minor=0 total=3 reported=1", run);
+    }
+
+    @Test
+    public void runsThePostBuildActionAsAGenericStep() throws Exception {
+        WorkflowJob job = r.jenkins.createProject(WorkflowJob.class, "generic");
+        //the merge request trigger passes the merge request as a parameter
+        job.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("gitlabMergeRequestId", "1")));
+        //the settings left out are null, and use the defaults
+        job.setDefinition(new CpsFlowDefinition(
+                "node {\n"
+                + "  writeFile file: 'sonar-report.json', text: '" + REPORT + "'\n"
+                + "  step([$class: 'GitlabSonarReporter', projectPath: 'group/project', sonarResults: 'sonar-report.json'])\n"
+                + "}"));
+        r.assertBuildStatusSuccess(job.scheduleBuild2(0));
+        //the action never fails the build, so the rendered report waiting in the outbox shows it ran
+        String[] outbox = new File(r.jenkins.getRootDir(), ReportOutbox.DIRECTORY).list();
+        assertTrue(outbox != null && outbox.length == 1);
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import jenkins.plugins.sonarparser.IssueFingerprint;
+import jenkins.plugins.sonarparser.models.SonarComponent;
+import jenkins.plugins.sonarparser.models.SonarIssue;
+import jenkins.plugins.sonarparser.models.SonarReport;
+import jenkins.plugins.sonarparser.models.SonarRule;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Saves and compares baselines in a temporary directory instead of
+ * JENKINS_HOME.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class IssueBaselinesTest {
+
+    private static final SonarIssue FIRST = issue("first", 3, "Fix this");
+    private static final SonarIssue SECOND = issue("second", 7, "And this");
+    private static final SonarIssue THIRD = issue("third", 9, "This too");
+
+    private File root;
+
+    @Before
+    public void useTemporaryRoot() throws IOException {
+        root = File.createTempFile("baselines", "");
+        assertTrue(root.delete() && root.mkdir());
+        IssueBaselines.setRoot(root);
+    }
+
+    @After
+    public void removeTemporaryRoot() {
+        IssueBaselines.setRoot(null);
+        delete(root);
+    }
+
+    @Test
+    public void fingerprintsEachIssueOnceInOrder() {
+        long[] fingerprints = IssueBaselines.fingerprintsOf(report(SECOND, FIRST, SECOND));
+        long[] expected = {IssueFingerprint.of(FIRST), IssueFingerprint.of(SECOND)};
+        Arrays.sort(expected);
+        assertTrue(Arrays.equals(expected, fingerprints));
+    }
+
+    @Test
+    public void reportsEverythingWithoutABaseline() {
+        SonarReport report = report(FIRST, SECOND);
+        assertSame(report, IssueBaselines.delta(building(1), report));
+    }
+
+    @Test
+    public void reportsOnlyWhatChangedSinceTheSavedBaseline() {
+        IssueBaselines.save(posted(1, report(FIRST, SECOND)));
+        SonarReport delta = IssueBaselines.delta(building(1), report(SECOND, THIRD));
+        assertEquals(1, delta.getNewIssueCount());
+        assertSame(THIRD, delta.getNewIssues().get(0));
+        assertEquals(Integer.valueOf(1), delta.getFixedIssueCount());
+        assertEquals(2, delta.getTotalIssueCount());
+    }
+
+    @Test
+    public void keepsTheBaselinesOfReportsApart() {
+        IssueBaselines.save(posted(1, report(FIRST)));
+        SonarReport report = report(FIRST);
+        assertSame(report, IssueBaselines.delta(building(2), report));
+    }
+
+    @Test
+    public void replacesTheBaselineWhenSavedAgain() {
+        IssueBaselines.save(posted(1, report(FIRST)));
+        IssueBaselines.save(posted(1, report(SECOND)));
+        SonarReport delta = IssueBaselines.delta(building(1), report(SECOND));
+        assertEquals(0, delta.getNewIssueCount());
+        assertEquals(Integer.valueOf(0), delta.getFixedIssueCount());
+    }
+
+    @Test
+    public void forgetsTheBaselinesOfAFinishedMergeRequest() {
+        IssueBaselines.save(posted(1, report(FIRST)));
+        IssueBaselines.save(posted(2, report(FIRST)));
+        IssueBaselines.evict("group/project", 1);
+        SonarReport report = report(FIRST);
+        assertSame(report, IssueBaselines.delta(building(1), report));
+        assertEquals(0, IssueBaselines.delta(building(2), report).getNewIssueCount());
+    }
+
+    @Test
+    public void keepsEachMergeRequestInADirectoryOfItsOwn() {
+        IssueBaselines.save(posted(1, report(FIRST)));
+        IssueBaselines.save(posted(2, report(FIRST)));
+        IssueBaselines.evict("group/project", 1);
+        File[] directories = new File(root, "gitlab-sonar-reporter-baselines").listFiles();
+        assertEquals(1, directories.length);
+        assertTrue(directories[0].isDirectory());
+    }
+
+    @Test
+    public void savesNothingForAReportThatIsNotIncremental() {
+        IssueBaselines.save(new PendingReport("group/project", 1, "abc", "job", "sonar-report.json", 1,
+                new ArrayList<String>(), new ArrayList<InlineCommentPublisher.Comment>(), null, null, null));
+        SonarReport report = report(FIRST);
+        assertSame(report, IssueBaselines.delta(building(1), report));
+    }
+
+    private static PendingReport building(int mergeRequestId) {
+        return new PendingReport("group/project", mergeRequestId, "abc", "job", "sonar-report.json", 2, null, null, null);
+    }
+
+    private static PendingReport posted(int mergeRequestId, SonarReport report) {
+        return new PendingReport("group/project", mergeRequestId, "abc", "job", "sonar-report.json", 1,
+                new ArrayList<String>(), new ArrayList<InlineCommentPublisher.Comment>(), null, IssueBaselines.fingerprintsOf(report), report);
+    }
+
+    private static SonarIssue issue(String key, int line, String message) {
+        return new SonarIssue(key, "project:src/Foo.java", line, message, "MAJOR", "squid:S1", "OPEN", true, null, null);
+    }
+
+    private static SonarReport report(SonarIssue... issues) {
+        List<SonarIssue> list = new ArrayList<SonarIssue>(Arrays.asList(issues));
+        return new SonarReport("5.1", list, new ArrayList<SonarComponent>(), new ArrayList<SonarRule>());
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
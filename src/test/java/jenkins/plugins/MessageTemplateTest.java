@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import jenkins.plugins.sonarparser.models.SonarComponent;
+import jenkins.plugins.sonarparser.models.SonarIssue;
+import jenkins.plugins.sonarparser.models.SonarReport;
+import jenkins.plugins.sonarparser.models.SonarRule;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * @author jacob.schoen@ge.com
+ */
+public class MessageTemplateTest {
+
+    private static final SonarIssue ISSUE = new SonarIssue("AU-1", "project:src/Foo.java", 12, "Fix this", "MAJOR", "squid:S1", "OPEN", true, null, null);
+
+    @Test
+    public void insertsTheValues() {
+        assertEquals("MAJOR squid:S1 at project:src/Foo.java:12 Fix this (AU-1)",
+                MessageTemplate.compile("$SEVERITY $RULE at $COMPONENT:$LINE $MESSAGE ($KEY)").render(null, ISSUE));
+    }
+
+    @Test
+    public void insertsDollarsAndBackslashesAsTheyAre() {
+        SonarIssue issue = new SonarIssue("AU-2", "project:src/Foo.java", 1, "Use $1 or \\d in C:\\temp, not $KEY", "MINOR", "squid:S2", "OPEN", true, null, null);
+        assertEquals("> Use $1 or \\d in C:\\temp, not $KEY", MessageTemplate.compile("> $MESSAGE").render(null, issue));
+    }
+
+    @Test
+    public void keepsUnknownVariablesAsWritten() {
+        assertEquals("$BRANCH costs $5 on line 12$", MessageTemplate.compile("$BRANCH costs $5 on line $LINE$").render(null, ISSUE));
+    }
+
+    @Test
+    public void matchesTheLongestName() {
+        SonarReport report = report(ISSUE);
+        report.setTotalIssueCount(40);
+        assertEquals("40 of AU-1s and 12S", MessageTemplate.compile("$TOTAL_ISSUE_COUNT of $KEYs and $LINES").render(report, ISSUE));
+    }
+
+    @Test
+    public void leavesIssueVariablesInTheHeader() {
+        MessageTemplate header = MessageTemplate.compile("$NEW_ISSUE_COUNT new issues, first: $MESSAGE on $LINE");
+        assertEquals("1 new issues, first: $MESSAGE on $LINE", header.render(report(ISSUE), null));
+    }
+
+    @Test
+    public void leavesReportVariablesInAnIssue() {
+        assertEquals("$NEW_ISSUE_COUNT: Fix this", MessageTemplate.compile("$NEW_ISSUE_COUNT: $MESSAGE").render(null, ISSUE));
+    }
+
+    @Test
+    public void countsNothingFixedWithoutAnEarlierReport() {
+        assertEquals("0 fixed", MessageTemplate.compile("$FIXED_ISSUE_COUNT fixed").render(report(ISSUE), null));
+    }
+
+    @Test
+    public void appendsToWhatIsThere() {
+        StringBuilder out = new StringBuilder("Issues:\n");
+        MessageTemplate template = MessageTemplate.compile("- $KEY\n");
+        template.appendTo(out, null, ISSUE);
+        template.appendTo(out, null, ISSUE);
+        assertEquals("Issues:\n- AU-1\n- AU-1\n", out.toString());
+    }
+
+    @Test
+    public void measuresTheTextAroundTheVariables() {
+        MessageTemplate template = MessageTemplate.compile("**$SEVERITY** $MESSAGE!");
+        assertEquals("**** !".length(), template.getLiteralLength());
+        assertEquals("**$SEVERITY** $MESSAGE!", template.getSource());
+    }
+
+    @Test
+    public void treatsNoTemplateAsAnEmptyOne() {
+        MessageTemplate template = MessageTemplate.compile(null);
+        assertEquals("", template.getSource());
+        assertEquals("", template.render(report(ISSUE), ISSUE));
+    }
+
+    private static SonarReport report(SonarIssue... issues) {
+        return new SonarReport("5.1", new ArrayList<SonarIssue>(Arrays.asList(issues)), new ArrayList<SonarComponent>(), new ArrayList<SonarRule>());
+    }
+
+}
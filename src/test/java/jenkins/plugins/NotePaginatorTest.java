@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author jacob.schoen@ge.com
+ */
+public class NotePaginatorTest {
+
+    private static final String ISSUE = "**MAJOR** *squid:S1* Line 10 `src/Foo.java` Fix this";
+
+    @Test
+    public void keepsEverythingInOneNoteWhenItFits() {
+        NotePaginator paginator = new NotePaginator(1000, 10, "Header\n", "Footer", 0);
+        paginator.add(ISSUE);
+        paginator.add(ISSUE);
+        List<String> notes = paginator.finish();
+        assertEquals(1, notes.size());
+        assertEquals("Header\n" + ISSUE + NotePaginator.ISSUE_SEPARATOR + ISSUE + "Footer", notes.get(0));
+    }
+
+    @Test
+    public void splitsBetweenIssuesOnly() {
+        NotePaginator paginator = new NotePaginator(200, 10, "Header\n", "Footer", 0);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(paginator.add(ISSUE));
+        }
+        List<String> notes = paginator.finish();
+        assertTrue(notes.size() > 1);
+        int issues = 0;
+        for (String note : notes) {
+            assertTrue(note.length() <= 200);
+            String body = note.replace("Header\n", "").replace("Footer", "");
+            for (String issue : body.split(NotePaginator.ISSUE_SEPARATOR)) {
+                assertEquals(ISSUE, issue);
+                issues++;
+            }
+        }
+        assertEquals(10, issues);
+        assertTrue(notes.get(0).startsWith("Header\n"));
+        assertTrue(notes.get(notes.size() - 1).endsWith("Footer"));
+        assertFalse(notes.get(0).endsWith("Footer"));
+    }
+
+    @Test
+    public void countsTheIssuesLeftOutOnceAllNotesAreUsed() {
+        NotePaginator paginator = new NotePaginator(150, 1, "", "", 0);
+        assertTrue(paginator.add(ISSUE));
+        assertFalse(paginator.add(ISSUE));
+        assertFalse(paginator.add(ISSUE, 3));
+        assertEquals(4, paginator.getOmitted());
+        List<String> notes = paginator.finish();
+        assertEquals(1, notes.size());
+        assertTrue(notes.get(0).contains("*4 more new issues are not shown.*"));
+    }
+
+    @Test
+    public void postsAHeaderThatLeavesNoRoomOnItsOwn() {
+        StringBuilder header = new StringBuilder();
+        while (header.length() < 120) {
+            header.append("A long header ");
+        }
+        NotePaginator paginator = new NotePaginator(200, 10, header.toString(), "", 0);
+        paginator.add(ISSUE);
+        List<String> notes = paginator.finish();
+        assertEquals(2, notes.size());
+        assertEquals(header.toString(), notes.get(0));
+        assertEquals(ISSUE, notes.get(1));
+    }
+
+    @Test
+    public void cutsAHeaderLongerThanANote() {
+        StringBuilder header = new StringBuilder();
+        while (header.length() < 500) {
+            header.append("word ");
+        }
+        NotePaginator paginator = new NotePaginator(200, 10, header.toString(), "", 0);
+        paginator.add(ISSUE);
+        List<String> notes = paginator.finish();
+        assertEquals(2, notes.size());
+        assertTrue(notes.get(0).length() <= 200);
+        assertTrue(notes.get(0).endsWith("word\u2026"));
+        assertEquals(ISSUE, notes.get(1));
+    }
+
+    @Test
+    public void cutsAnOversizedIssueAtASpace() {
+        CharSequence cut = NotePaginator.truncate("one two three four five six seven eight", 20);
+        assertTrue(cut.length() <= 20);
+        assertEquals("one two three\u2026", cut.toString());
+    }
+
+    @Test
+    public void closesTheCodeACutLeavesOpen() {
+        String block = NotePaginator.truncate("Example:\n```\nline one\nline two\nline three\n```", 30).toString();
+        assertTrue(block.length() <= 30);
+        assertTrue(block.endsWith("\u2026\n```"));
+        String inline = NotePaginator.truncate("Use `a much longer piece of inline code` here", 30).toString();
+        assertTrue(inline.length() <= 30);
+        assertTrue(inline.endsWith("\u2026`"));
+    }
+
+    @Test
+    public void leavesTextThatFitsAlone() {
+        assertEquals(ISSUE, NotePaginator.truncate(ISSUE, ISSUE.length()).toString());
+    }
+
+    /**
+     * Building the notes used to copy the whole note for every issue, which
+     * took time quadratic in the number of issues. Ten times the issues must
+     * take about ten times as long, not a hundred.
+     */
+    @Test
+    public void scalesLinearlyWithTheNumberOfIssues() {
+        //warm up so the compiler has done its work before timing
+        for (int i = 0; i < 5; i++) {
+            paginate(20000);
+        }
+        long small = fastest(5000);
+        long large = fastest(50000);
+        assertTrue("5000 issues took " + small + " ns and 50000 took " + large + " ns", large < small * 40);
+    }
+
+    private static long fastest(int issues) {
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            paginate(issues);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        return fastest;
+    }
+
+    private static void paginate(int issues) {
+        NotePaginator paginator = new NotePaginator(Integer.MAX_VALUE / 2, 1, "Header\n", "Footer", issues * ISSUE.length());
+        for (int i = 0; i < issues; i++) {
+            paginator.add(ISSUE);
+        }
+        paginator.finish();
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import jenkins.plugins.sonarparser.models.SonarComponent;
+import jenkins.plugins.sonarparser.models.SonarIssue;
+import jenkins.plugins.sonarparser.models.SonarReport;
+import jenkins.plugins.sonarparser.models.SonarRule;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author jacob.schoen@ge.com
+ */
+public class QualityGateTest {
+
+    @Test
+    public void passesWithinTheThresholds() {
+        CommitStatus status = QualityGate.parse("BLOCKER=0, MAJOR=2").evaluate(report("MAJOR", "MAJOR", "MINOR"), "http://jenkins/job/1/");
+        assertEquals(CommitStatus.SUCCESS, status.getState());
+        assertEquals("http://jenkins/job/1/", status.getTargetUrl());
+    }
+
+    @Test
+    public void failsOverAThreshold() {
+        CommitStatus status = QualityGate.parse("BLOCKER=0 MAJOR=2").evaluate(report("BLOCKER", "MAJOR"), null);
+        assertEquals(CommitStatus.FAILED, status.getState());
+        assertTrue(status.getDescription(), status.getDescription().contains("1 BLOCKER (at most 0)"));
+    }
+
+    @Test
+    public void passesEverythingWithoutThresholds() {
+        assertEquals(CommitStatus.SUCCESS, QualityGate.parse(null).evaluate(report("BLOCKER"), null).getState());
+        assertEquals(CommitStatus.SUCCESS, QualityGate.parse("  ").evaluate(report("BLOCKER"), null).getState());
+    }
+
+    @Test
+    public void readsSeveritiesInAnyCase() {
+        assertEquals(CommitStatus.FAILED, QualityGate.parse("blocker=0").evaluate(report("BLOCKER"), null).getState());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnUnknownSeverity() {
+        QualityGate.parse("SEVERE=1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAThresholdThatIsNotANumber() {
+        QualityGate.parse("MAJOR=ten");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANegativeThreshold() {
+        QualityGate.parse("MAJOR=-1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAThresholdWithoutASeverity() {
+        QualityGate.parse("10");
+    }
+
+    private static SonarReport report(String... severities) {
+        List<SonarIssue> issues = new ArrayList<SonarIssue>();
+        for (int i = 0; i < severities.length; i++) {
+            issues.add(new SonarIssue("issue" + i, "project:src/Foo.java", i + 1, "Fix this", severities[i], "squid:S1", "OPEN", true, null, null));
+        }
+        return new SonarReport("5.1", issues, new ArrayList<SonarComponent>(), new ArrayList<SonarRule>());
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.gitlab;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author jacob.schoen@ge.com
+ */
+public class ChangedLinesTest {
+
+    private static final String DIFF = "@@ -1,5 +1,6 @@\n"
+            + " one\n"
+            + "+two\n"
+            + "+three\n"
+            + " four\n"
+            + "-gone\n"
+            + " five\n"
+            + "@@ -20,2 +21,3 @@ class Foo {\n"
+            + " twenty-one\n"
+            + "+twenty-two\n"
+            + " twenty-three\n"
+            + "\\ No newline at end of file\n";
+
+    @Test
+    public void findsTheAddedLinesOfEachHunk() {
+        ChangedLines changedLines = ChangedLines.parse(changes(change("module/src/Foo.java", DIFF, false)));
+        assertTrue(changedLines.contains("module/src/Foo.java", 2));
+        assertTrue(changedLines.contains("module/src/Foo.java", 3));
+        assertTrue(changedLines.contains("module/src/Foo.java", 22));
+        assertFalse(changedLines.contains("module/src/Foo.java", 1));
+        assertFalse(changedLines.contains("module/src/Foo.java", 4));
+        assertFalse(changedLines.contains("module/src/Foo.java", 5));
+        assertFalse(changedLines.contains("module/src/Foo.java", 21));
+        assertFalse(changedLines.contains("module/src/Foo.java", 23));
+    }
+
+    @Test
+    public void countsEveryLineOfANewFile() {
+        ChangedLines changedLines = ChangedLines.parse(changes(change("New.java", "@@ -0,0 +1,2 @@\n+a\n+b\n", false)));
+        assertTrue(changedLines.contains("New.java", 1));
+        assertTrue(changedLines.contains("New.java", 2));
+        assertFalse(changedLines.contains("New.java", 3));
+    }
+
+    @Test
+    public void matchesPathsRelativeToAModule() {
+        ChangedLines changedLines = ChangedLines.parse(changes(change("module/src/Foo.java", DIFF, false)));
+        assertEquals("module/src/Foo.java", changedLines.repositoryPathOf("src/Foo.java"));
+        assertEquals("module/src/Foo.java", changedLines.repositoryPathOf("/module/src/Foo.java"));
+        assertTrue(changedLines.contains("src/Foo.java", 2));
+        assertNull(changedLines.repositoryPathOf("other/Foo.java"));
+        assertNull(changedLines.repositoryPathOf("ule/src/Foo.java"));
+        assertFalse(changedLines.containsFile("Bar.java"));
+    }
+
+    @Test
+    public void skipsDeletedFiles() {
+        ChangedLines changedLines = ChangedLines.parse(changes(change("Old.java", "@@ -1,1 +0,0 @@\n-a\n", true)));
+        assertFalse(changedLines.containsFile("Old.java"));
+    }
+
+    private static List<Object> changes(Map<String, Object>... files) {
+        List<Object> changes = new ArrayList<Object>();
+        for (Map<String, Object> file : files) {
+            changes.add(file);
+        }
+        return changes;
+    }
+
+    private static Map<String, Object> change(String path, String diff, boolean deleted) {
+        Map<String, Object> change = new HashMap<String, Object>();
+        change.put("new_path", path);
+        change.put("diff", diff);
+        change.put("deleted_file", deleted);
+        return change;
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.gitlab;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Makes requests to a small HTTP server standing in for Gitlab.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class GitlabClientTest {
+
+    private static final String ETAG = "W/\"abc\"";
+
+    private HttpServer server;
+    private GitlabClient client;
+    private final RateLimiter rateLimiter = new RateLimiter(10);
+    private final List<String> ifNoneMatch = new ArrayList<String>();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/v3/projects/1/merge_request/2", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+                ifNoneMatch.add(etag);
+                if (ETAG.equals(etag)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                respond(exchange, 200, "{\"id\":2,\"state\":\"opened\"}");
+            }
+        });
+        server.createContext("/api/v3/limited", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Retry-After", "7");
+                respond(exchange, 429, "{\"message\":\"Retry later\"}");
+            }
+        });
+        server.createContext("/api/v3/nearly_limited", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("RateLimit-Remaining", "1");
+                exchange.getResponseHeaders().add("RateLimit-Reset", "60");
+                respond(exchange, 200, "{}");
+            }
+        });
+        server.start();
+        client = new GitlabClient("http://localhost:" + server.getAddress().getPort() + "/", "token", false, 5000, rateLimiter);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void readsTheWholeAnswer() throws IOException {
+        Map answer = client.get("/projects/1/merge_request/2", Map.class);
+        assertEquals("opened", answer.get("state"));
+    }
+
+    @Test
+    public void canBeUsedAgainAfterAnAnswer() throws IOException {
+        client.get("/projects/1/merge_request/2", Map.class);
+        Map answer = client.get("/projects/1/merge_request/2", Map.class);
+        assertEquals(2, answer.get("id"));
+    }
+
+    @Test
+    public void fetchesAResourceWithItsEtag() throws IOException {
+        GitlabClient.Tagged<Map> fetched = client.getIfChanged("/projects/1/merge_request/2", Map.class, null);
+        assertEquals("opened", fetched.getValue().get("state"));
+        assertEquals(ETAG, fetched.getEtag());
+        assertNull(ifNoneMatch.get(0));
+    }
+
+    @Test
+    public void asksWhetherTheCopyHeldHasChanged() throws IOException {
+        assertNull(client.getIfChanged("/projects/1/merge_request/2", Map.class, ETAG));
+        assertEquals(ETAG, ifNoneMatch.get(0));
+    }
+
+    @Test
+    public void fetchesAgainWhenTheCopyHeldIsOutOfDate() throws IOException {
+        GitlabClient.Tagged<Map> fetched = client.getIfChanged("/projects/1/merge_request/2", Map.class, "W/\"old\"");
+        assertEquals("opened", fetched.getValue().get("state"));
+        assertEquals(ETAG, fetched.getEtag());
+    }
+
+    @Test
+    public void saysHowLongGitlabAskedToWait() throws IOException {
+        try {
+            client.get("/limited", Map.class);
+            fail("the request was rate limited");
+        } catch (GitlabHttpException e) {
+            assertEquals(429, e.getStatus());
+            assertEquals(7000, e.getRetryAfterMillis());
+        }
+    }
+
+    @Test
+    public void handsOutNoMoreRequestsThanGitlabHasLeft() throws IOException {
+        client.get("/nearly_limited", Map.class);
+        assertTrue(rateLimiter.getAvailablePermits() <= 1);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream output = exchange.getResponseBody();
+        try {
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+    }
+
+}
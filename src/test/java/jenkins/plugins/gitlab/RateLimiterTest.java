@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.gitlab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author jacob.schoen@ge.com
+ */
+public class RateLimiterTest {
+
+    @Test
+    public void savesUpABurst() {
+        assertEquals(20, new RateLimiter(10).getAvailablePermits());
+    }
+
+    @Test
+    public void keepsNoMoreTokensThanGitlabHasLeft() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(10);
+        limiter.limitTo(3, -1);
+        assertEquals(3, limiter.getAvailablePermits());
+        limiter.limitTo(100, -1);
+        assertEquals(3, limiter.getAvailablePermits());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void handsOutNothingUntilTheLimitResets() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(10);
+        limiter.limitTo(0, 100);
+        assertEquals(0, limiter.getAvailablePermits());
+        assertFalse(limiter.tryAcquire());
+        Thread.sleep(150);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void waitsForTheRefillWhenTheResetIsUnknown() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(10);
+        limiter.limitTo(0, -1);
+        assertEquals(0, limiter.getAvailablePermits());
+        //not paused, so this only waits about a tenth of a second for the next token
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void handsOutNothingWhilePaused() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(10);
+        limiter.pause(100);
+        assertFalse(limiter.tryAcquire());
+        Thread.sleep(150);
+        assertTrue(limiter.tryAcquire());
+    }
+
+}
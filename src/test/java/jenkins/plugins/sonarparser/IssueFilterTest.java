@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.sonarparser;
+
+import jenkins.plugins.sonarparser.models.SonarIssue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author jacob.schoen@ge.com
+ */
+public class IssueFilterTest {
+
+    @Test
+    public void emptySettingsAcceptEverything() {
+        IssueFilter filter = IssueFilter.create("", "", " ", null, "");
+        assertSame(IssueFilter.ALL, filter);
+        assertTrue(filter.accepts(issue("project:src/Foo.java", "INFO", "squid:S1")));
+    }
+
+    @Test
+    public void keepsTheMinimumSeverityAndWorse() {
+        IssueFilter filter = IssueFilter.create("MAJOR", null, null, null, null);
+        assertTrue(filter.accepts(issue("project:src/Foo.java", "BLOCKER", "squid:S1")));
+        assertTrue(filter.accepts(issue("project:src/Foo.java", "MAJOR", "squid:S1")));
+        assertFalse(filter.accepts(issue("project:src/Foo.java", "MINOR", "squid:S1")));
+        assertFalse(filter.accepts(issue("project:src/Foo.java", "INFO", "squid:S1")));
+    }
+
+    @Test
+    public void includesAndExcludesRules() {
+        IssueFilter filter = IssueFilter.create(null, "squid:S1, squid:S2", "squid:S2", null, null);
+        assertTrue(filter.accepts(issue("project:src/Foo.java", "MAJOR", "squid:S1")));
+        assertFalse(filter.accepts(issue("project:src/Foo.java", "MAJOR", "squid:S2")));
+        assertFalse(filter.accepts(issue("project:src/Foo.java", "MAJOR", "squid:S3")));
+    }
+
+    @Test
+    public void includesAndExcludesPaths() {
+        IssueFilter filter = IssueFilter.create(null, null, null, "src/main/**", "**/generated/**");
+        assertTrue(filter.accepts(issue("project:module:src/main/java/Foo.java", "MAJOR", "squid:S1")));
+        assertFalse(filter.accepts(issue("project:module:src/test/java/FooTest.java", "MAJOR", "squid:S1")));
+        assertFalse(filter.accepts(issue("project:module:src/main/java/generated/Bar.java", "MAJOR", "squid:S1")));
+    }
+
+    @Test
+    public void matchesWildcardsWithinANameOnly() {
+        IssueFilter filter = IssueFilter.create(null, null, null, "src/*.java", null);
+        assertTrue(filter.accepts(issue("project:src/Foo.java", "MAJOR", "squid:S1")));
+        assertFalse(filter.accepts(issue("project:src/foo/Bar.java", "MAJOR", "squid:S1")));
+        assertFalse(filter.accepts(issue("project:src/Foo.xml", "MAJOR", "squid:S1")));
+    }
+
+    private static SonarIssue issue(String component, String severity, String rule) {
+        return new SonarIssue("key", component, 1, "Fix this", severity, rule, "OPEN", true, null, null);
+    }
+
+}
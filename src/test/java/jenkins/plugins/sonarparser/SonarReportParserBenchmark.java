@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014 Jacob Schoen 
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE. 
+ */
+package jenkins.plugins.sonarparser;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import jenkins.plugins.sonarparser.models.SonarReport;
+import jenkins.plugins.sonarparser.utils.JodaDateTimeModule;
+
+/**
+ * Compares reading a whole report with a mapper created and configured for
+ * every report, as the parser used to, against the shared reader of
+ * {@link SonarReportParser#parse(InputStream)}. Both bind the same report
+ * the same way, so the difference is the cost of the mapper alone. It is
+ * not run with the tests, run it by hand with the issue count as the
+ * argument, on the test class path.
+ *
+ * @author jacob.schoen@ge.com
+ */
+public class SonarReportParserBenchmark {
+
+    private static final int WARM_UP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) throws IOException {
+        int issues = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        byte[] report = report(issues);
+        System.out.println("Report of " + issues + " issues, " + report.length + " bytes");
+
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            parseWithNewMapper(report);
+            SonarReportParser.parse(new ByteArrayInputStream(report));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            parseWithNewMapper(report);
+        }
+        long newMapper = (System.nanoTime() - start) / ROUNDS / 1000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            SonarReportParser.parse(new ByteArrayInputStream(report));
+        }
+        long shared = (System.nanoTime() - start) / ROUNDS / 1000;
+
+        System.out.println("New mapper for every report: " + newMapper + " us per report");
+        System.out.println("Shared reader:               " + shared + " us per report");
+    }
+
+    private static SonarReport parseWithNewMapper(byte[] report) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JodaDateTimeModule());
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        InputStream input = new ByteArrayInputStream(report);
+        try {
+            return mapper.readValue(input, SonarReport.class);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * A report shaped like those of the sonar preview mode, with one in ten
+     * issues new.
+     */
+    private static byte[] report(int issues) {
+        StringBuilder json = new StringBuilder(issues * 300);
+        json.append("{\"version\":\"5.1\",\"issues\":[");
+        for (int i = 0; i < issues; i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"key\":\"issue-").append(i).append('"')
+                    .append(",\"component\":\"project:module:src/main/java/Class").append(i % 500).append(".java\"")
+                    .append(",\"line\":").append(i % 1000 + 1)
+                    .append(",\"message\":\"Remove this unused private field number ").append(i).append('"')
+                    .append(",\"severity\":\"").append(i % 2 == 0 ? "MAJOR" : "MINOR").append('"')
+                    .append(",\"rule\":\"squid:S").append(1000 + i % 50).append('"')
+                    .append(",\"status\":\"OPEN\"")
+                    .append(",\"isNew\":").append(i % 10 == 0)
+                    .append(",\"creationDate\":\"2015-06-01T12:00:00+0000\"")
+                    .append(",\"updateDate\":\"2015-06-01T12:00:00+0000\"}");
+        }
+        json.append("],\"components\":[");
+        for (int i = 0; i < 500; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"key\":\"project:module:src/main/java/Class").append(i).append(".java\"}");
+        }
+        json.append("],\"rules\":[");
+        for (int i = 0; i < 50; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"key\":\"squid:S").append(1000 + i)
+                    .append("\",\"rule\":\"S").append(1000 + i).append("\",\"repository\":\"squid\",\"name\":\"Rule ").append(i).append("\"}");
+        }
+        json.append("]}");
+        return json.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+}